@@ -38,7 +38,9 @@ android {
 }
 
 dependencies {
+    implementation(project(":core"))
     implementation("com.google.code.ksoap2-android:ksoap2-android:3.6.2")
+    implementation("androidx.asynclayoutinflater:asynclayoutinflater:1.0.0")
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.constraintlayout)
@@ -0,0 +1,16 @@
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    // Adnotacje @Nullable/@NonNull jak w aplikacji; w czasie działania niepotrzebne.
+    compileOnly("androidx.annotation:annotation:1.9.1")
+
+    testImplementation("junit:junit:4.13.2")
+    testCompileOnly("androidx.annotation:annotation:1.9.1")
+}
@@ -0,0 +1,15 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+
+/** Dekoder base64 używany przez {@link ImageBytes}; domyślnie {@link ParallelBase64}. */
+public interface Base64Decoder {
+
+    /**
+     * Dekoduje znaki od {@code start} do końca {@code text}.
+     *
+     * @throws IllegalArgumentException przy niepoprawnych danych
+     */
+    @NonNull
+    byte[] decode(@NonNull String text, int start);
+}
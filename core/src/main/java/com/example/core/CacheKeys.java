@@ -0,0 +1,78 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Klucze cache fragmentów mapy i skróty używane jako nazwy plików.
+ * "px:x1,y1,x2,y2" dla zaznaczeń w pikselach, "geo:lat1,lon1,lat2,lon2" dla współrzędnych.
+ */
+public final class CacheKeys {
+
+    private CacheKeys() {
+    }
+
+    public static String pixelKey(int x1, int y1, int x2, int y2) {
+        return "px:" + x1 + "," + y1 + "," + x2 + "," + y2;
+    }
+
+    /** Odwrotność {@link #pixelKey}: {x1, y1, x2, y2} albo null dla innych kluczy. */
+    @Nullable
+    public static int[] parsePixelKey(@NonNull String key) {
+        if (!key.startsWith("px:")) return null;
+        String[] parts = key.substring(3).split(",");
+        if (parts.length != 4) return null;
+        try {
+            return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static String geoKey(double lat1, double lon1, double lat2, double lon2) {
+        return "geo:" + lat1 + "," + lon1 + "," + lat2 + "," + lon2;
+    }
+
+    /** Odwrotność {@link #geoKey}: {lat1, lon1, lat2, lon2} albo null dla innych kluczy. */
+    @Nullable
+    public static double[] parseGeoKey(@NonNull String key) {
+        if (!key.startsWith("geo:")) return null;
+        String[] parts = key.substring(4).split(",");
+        if (parts.length != 4) return null;
+        try {
+            return new double[]{Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]), Double.parseDouble(parts[3])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** SHA-1 klucza w hex - nazwa pliku na dysku. */
+    public static String hash(String key) {
+        return hex("SHA-1", key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** SHA-256 treści w hex. */
+    public static String sha256Hex(byte[] bytes) {
+        return hex("SHA-256", bytes);
+    }
+
+    private static String hex(String algorithm, byte[] input) {
+        try {
+            byte[] digest = MessageDigest.getInstance(algorithm).digest(input);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format(Locale.US, "%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
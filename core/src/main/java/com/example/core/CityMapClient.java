@@ -0,0 +1,143 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Klient serwisu mapy miasta. Wywołania idą przez wymienny {@link SoapTransport};
+ * błędy są zwracane jako tekst zaczynający się od "ERROR:", tak jak odpowiedzi serwisu.
+ */
+public class CityMapClient {
+
+    private static final String TAG = "CityMapService";
+
+    public static final String DEFAULT_URL = "http://cutmap-api.azurewebsites.net/ServiceCityMap";
+    public static final String NAMESPACE = "http://citymapsoap.com/service/";
+    public static final int DEFAULT_TIMEOUT_MS = 60_000;
+
+    private static final SoapTransport.Operation GET_FRAGMENT_OF_MAP = new SoapTransport.Operation(
+            NAMESPACE, "GetFragmentOfMap", "X1", "Y1", "X2", "Y2");
+    private static final SoapTransport.Operation GET_INITIAL_MAP = new SoapTransport.Operation(
+            NAMESPACE, "GetInitialMap");
+    private static final SoapTransport.Operation GET_FRAGMENT_BY_COORDINATES = new SoapTransport.Operation(
+            NAMESPACE, "GetFragmentOfMapUsingGeoCoordinates", "Lat1", "Lon1", "Lat2", "Lon2");
+
+    private volatile SoapTransport transport;
+    @Nullable
+    private final Supplier<? extends SoapTransport> fallbackFactory;
+    @Nullable
+    private SoapTransport fallback;
+
+    /** Klient {@link RawSoapTransport} na domyślny adres, bez transportu zapasowego. */
+    public CityMapClient() {
+        this(new RawSoapTransport(DEFAULT_URL, DEFAULT_TIMEOUT_MS), null);
+    }
+
+    /**
+     * @param fallbackFactory tworzy transport zapasowy przy pierwszym błędzie formatu; null - bez ponawiania
+     */
+    public CityMapClient(@NonNull SoapTransport transport,
+                         @Nullable Supplier<? extends SoapTransport> fallbackFactory) {
+        this.transport = transport;
+        this.fallbackFactory = fallbackFactory;
+    }
+
+    /** Podmienia transport używany do wywołań. */
+    public void setTransport(@NonNull SoapTransport transport) {
+        this.transport = transport;
+    }
+
+    public String getFragmentOfMap(int x1, int y1, int x2, int y2) {
+        try {
+            return call(GET_FRAGMENT_OF_MAP, null,
+                    Integer.toString(x1), Integer.toString(y1),
+                    Integer.toString(x2), Integer.toString(y2)).base64;
+        } catch (IOException e) {
+            return error("GetFragmentOfMap", e);
+        }
+    }
+
+    /** Wynik GetInitialMap z nagłówkiem ETag - pozwala odświeżać mapę warunkowo. */
+    public static final class InitialMapResult {
+        /** Serwer odpowiedział 304 albo 412 na If-None-Match - mapa w cache jest aktualna. */
+        public final boolean notModified;
+        @Nullable
+        public final String etag;
+        /** Base64 obrazu albo tekst błędu zaczynający się od "ERROR:"; null przy notModified. */
+        @Nullable
+        public final String base64;
+
+        InitialMapResult(boolean notModified, @Nullable String etag, @Nullable String base64) {
+            this.notModified = notModified;
+            this.etag = etag;
+            this.base64 = base64;
+        }
+    }
+
+    public String getInitialMap() {
+        return fetchInitialMap(null).base64;
+    }
+
+    /**
+     * Pobiera mapę startową. Gdy podano {@code ifNoneMatch}, wysyła nagłówek
+     * If-None-Match i przy niezmienionej mapie serwer zwraca samo 304 albo,
+     * jak przewiduje RFC 7232 dla POST, 412.
+     */
+    public InitialMapResult fetchInitialMap(@Nullable String ifNoneMatch) {
+        try {
+            SoapTransport.Response r = call(GET_INITIAL_MAP, ifNoneMatch);
+            if (r.notModified) {
+                CoreLog.d(TAG, "GetInitialMap not modified (" + ifNoneMatch + ")");
+            }
+            return new InitialMapResult(r.notModified, r.etag, r.base64);
+        } catch (IOException e) {
+            return new InitialMapResult(false, null, error("GetInitialMap", e));
+        }
+    }
+
+    public String getFragmentOfMapByCoordinate(Double rLat, Double rLon, Double lLat, Double lLon) {
+        try {
+            return call(GET_FRAGMENT_BY_COORDINATES, null,
+                    String.valueOf(rLat), String.valueOf(rLon),
+                    String.valueOf(lLat), String.valueOf(lLon)).base64;
+        } catch (IOException e) {
+            return error("GetFragmentOfMapUsingGeoCoordinates", e);
+        }
+    }
+
+    /**
+     * Wywołuje operację bieżącym transportem. Jeśli odpowiedź nie dała się sparsować,
+     * ponawia raz transportem zapasowym; błędy sieci i SOAP Fault nie są ponawiane.
+     */
+    private SoapTransport.Response call(SoapTransport.Operation op, @Nullable String ifNoneMatch,
+                                        String... values) throws IOException {
+        SoapTransport primary = transport;
+        try {
+            return primary.call(op, values, ifNoneMatch);
+        } catch (SoapTransport.FormatException e) {
+            SoapTransport fb = fallback();
+            if (fb == null || fb.getClass() == primary.getClass()) throw e;
+            CoreLog.w(TAG, op.name + " via " + primary + " failed (" + e.getMessage() + "), retrying with " + fb);
+            return fb.call(op, values, ifNoneMatch);
+        }
+    }
+
+    @Nullable
+    private synchronized SoapTransport fallback() {
+        if (fallback == null && fallbackFactory != null) {
+            fallback = fallbackFactory.get();
+        }
+        return fallback;
+    }
+
+    private static String error(String operation, IOException e) {
+        CoreLog.e(TAG, "SOAP ERROR (" + operation + ")", e);
+        if (e instanceof SoapTransport.FormatException || e instanceof SoapTransport.FaultException) {
+            return "ERROR: " + e.getMessage();
+        }
+        return "ERROR: " + e;
+    }
+}
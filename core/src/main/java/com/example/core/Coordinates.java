@@ -0,0 +1,25 @@
+package com.example.core;
+
+import androidx.annotation.Nullable;
+
+/** Zakresy wartości przyjmowanych przez serwis. */
+public final class Coordinates {
+
+    /** Przestrzeń pikseli mapy po stronie serwisu. */
+    public static final int MAP_SIZE = 1000;
+
+    private Coordinates() {
+    }
+
+    public static boolean isLatitude(@Nullable Double lat) {
+        return lat != null && lat >= -90 && lat <= 90;
+    }
+
+    public static boolean isLongitude(@Nullable Double lon) {
+        return lon != null && lon >= -180 && lon <= 180;
+    }
+
+    public static boolean isMapPixel(@Nullable Integer v) {
+        return v != null && v >= 0 && v <= MAP_SIZE;
+    }
+}
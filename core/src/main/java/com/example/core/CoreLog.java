@@ -0,0 +1,52 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.logging.Level;
+
+/**
+ * Logowanie wewnątrz biblioteki przez wymienny {@link Logger}.
+ * Domyślnie java.util.logging (na Androidzie trafia do logcat od poziomu INFO).
+ */
+public final class CoreLog {
+
+    private static volatile Logger logger = new JulLogger();
+
+    private CoreLog() {
+    }
+
+    public static void setLogger(@NonNull Logger logger) {
+        CoreLog.logger = logger;
+    }
+
+    public static void d(String tag, String message) {
+        logger.log(Logger.DEBUG, tag, message, null);
+    }
+
+    public static void i(String tag, String message) {
+        logger.log(Logger.INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        logger.log(Logger.WARN, tag, message, null);
+    }
+
+    public static void w(String tag, String message, @Nullable Throwable error) {
+        logger.log(Logger.WARN, tag, message, error);
+    }
+
+    public static void e(String tag, String message, @Nullable Throwable error) {
+        logger.log(Logger.ERROR, tag, message, error);
+    }
+
+    private static final class JulLogger implements Logger {
+        @Override
+        public void log(int level, String tag, String message, @Nullable Throwable error) {
+            Level jul = level >= ERROR ? Level.SEVERE
+                    : level >= WARN ? Level.WARNING
+                    : level >= INFO ? Level.INFO : Level.FINE;
+            java.util.logging.Logger.getLogger(tag).log(jul, message, error);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Strumieniowy odczyt koperty odpowiedzi serwisu bez pełnego parsera XML:
+ * przechodzi po znacznikach do elementu ImageInBase64 (z dowolnym prefiksem
+ * przestrzeni nazw) i zwraca jego tekst. SOAP Fault kończy się
+ * {@link SoapTransport.FaultException} z treścią faultstring, a koperta bez
+ * obrazu - {@link SoapTransport.FormatException}.
+ */
+public final class EnvelopeParser {
+
+    public static final String IMAGE_ELEMENT = "ImageInBase64";
+
+    private final Reader reader;
+    private final char[] buf = new char[8192];
+    private int pos, limit;
+    private final StringBuilder name = new StringBuilder(64);
+    private boolean selfClosing;
+
+    private EnvelopeParser(InputStream in) {
+        this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Czyta kopertę do końca elementu ImageInBase64. Strumień nie jest zamykany.
+     *
+     * @param sizeHint oczekiwana długość treści (np. Content-Length) albo -1
+     */
+    @NonNull
+    public static String readImage(@NonNull InputStream in, int sizeHint) throws IOException {
+        return new EnvelopeParser(in).findImage(sizeHint);
+    }
+
+    private String findImage(int sizeHint) throws IOException {
+        boolean fault = false;
+        String tag;
+        while ((tag = nextStartTag()) != null) {
+            if (IMAGE_ELEMENT.equals(tag)) {
+                return selfClosing ? "" : readText(Math.max(16, sizeHint)).trim();
+            }
+            if ("Fault".equals(tag)) {
+                fault = true;
+            } else if (fault && "faultstring".equals(tag) && !selfClosing) {
+                throw new SoapTransport.FaultException("SOAP Fault: " + readText(256).trim());
+            }
+        }
+        if (fault) throw new SoapTransport.FaultException("SOAP Fault");
+        throw new SoapTransport.FormatException("tag " + IMAGE_ELEMENT + " not found");
+    }
+
+    /** Lokalna nazwa następnego znacznika otwierającego albo null na końcu danych. */
+    @Nullable
+    private String nextStartTag() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<') continue;
+            c = read();
+            if (c == '!') {
+                // CDATA, komentarz albo deklaracja - pomijane w całości, razem z '>' w środku.
+                readMarkup(null);
+                continue;
+            }
+            if (c == '/' || c == '?') {
+                // Znacznik zamykający albo instrukcja przetwarzania - pomijane w całości.
+                while (c != -1 && c != '>') c = read();
+                continue;
+            }
+
+            name.setLength(0);
+            while (c != -1 && c != '>' && c != '/' && !Character.isWhitespace(c)) {
+                if (c == ':') {
+                    name.setLength(0);
+                } else {
+                    name.append((char) c);
+                }
+                c = read();
+            }
+
+            int prev = c;
+            while (c != -1 && c != '>') {
+                if (c == '"' || c == '\'') {
+                    int quote = c;
+                    do {
+                        c = read();
+                    } while (c != -1 && c != quote);
+                }
+                prev = c;
+                c = read();
+            }
+            if (c == -1) return null;
+            selfClosing = prev == '/';
+            return name.toString();
+        }
+        return null;
+    }
+
+    /** Tekst do następnego znacznika, z rozwiniętymi encjami i treścią sekcji CDATA. */
+    private String readText(int capacity) throws IOException {
+        StringBuilder sb = new StringBuilder(capacity);
+        while (true) {
+            if (pos == limit && !fill()) return sb.toString();
+            int start = pos;
+            while (pos < limit) {
+                char c = buf[pos];
+                if (c == '<' || c == '&') break;
+                pos++;
+            }
+            sb.append(buf, start, pos - start);
+            if (pos == limit) continue;
+
+            char c = buf[pos++];
+            if (c == '<') {
+                if (read() != '!') return sb.toString();
+                readMarkup(sb);
+                continue;
+            }
+            appendEntity(sb);
+        }
+    }
+
+    /**
+     * Czyta resztę konstrukcji po "&lt;!". Treść sekcji CDATA trafia dosłownie do
+     * {@code text} (o ile nie jest null); komentarze i deklaracje są pomijane.
+     */
+    private void readMarkup(@Nullable StringBuilder text) throws IOException {
+        int c = read();
+        if (c == '[') {
+            String open = "CDATA[";
+            for (int i = 0; i < open.length(); i++) {
+                c = read();
+                if (c != open.charAt(i)) {
+                    while (c != -1 && c != '>') c = read();
+                    return;
+                }
+            }
+            readUntil("]]>", text);
+            return;
+        }
+        if (c == '-' && (c = read()) == '-') {
+            readUntil("-->", null);
+            return;
+        }
+        while (c != -1 && c != '>') c = read();
+    }
+
+    /** Czyta do trzyznakowego {@code end} włącznie; znaki przed nim dopisuje do {@code out}. */
+    private void readUntil(String end, @Nullable StringBuilder out) throws IOException {
+        int p2 = -1, p1 = -1, c;
+        while ((c = read()) != -1) {
+            if (c == end.charAt(2) && p1 == end.charAt(1) && p2 == end.charAt(0)) {
+                if (out != null) out.setLength(out.length() - 2);
+                return;
+            }
+            if (out != null) out.append((char) c);
+            p2 = p1;
+            p1 = c;
+        }
+        throw new SoapTransport.FormatException("unterminated " + end);
+    }
+
+    private void appendEntity(StringBuilder sb) throws IOException {
+        StringBuilder ent = new StringBuilder(8);
+        int c;
+        while ((c = read()) != -1 && c != ';' && ent.length() < 10) {
+            ent.append((char) c);
+        }
+        String e = ent.toString();
+        switch (e) {
+            case "lt": sb.append('<'); return;
+            case "gt": sb.append('>'); return;
+            case "amp": sb.append('&'); return;
+            case "quot": sb.append('"'); return;
+            case "apos": sb.append('\''); return;
+            default:
+                if (e.startsWith("#")) {
+                    try {
+                        int code = e.startsWith("#x") || e.startsWith("#X")
+                                ? Integer.parseInt(e.substring(2), 16) : Integer.parseInt(e.substring(1));
+                        sb.appendCodePoint(code);
+                        return;
+                    } catch (IllegalArgumentException ignored) {
+                    }
+                }
+                throw new SoapTransport.FormatException("Bad entity &" + e + ";");
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Zamiana pola ImageInBase64 z odpowiedzi serwisu na bajty obrazu (PNG/JPEG).
+ */
+public final class ImageBytes {
+
+    private static final String TAG = "ImageBytes";
+
+    private static volatile Base64Decoder decoder = new ParallelBase64();
+
+    private ImageBytes() {
+    }
+
+    public static void setDecoder(@NonNull Base64Decoder decoder) {
+        ImageBytes.decoder = decoder;
+    }
+
+    /**
+     * Dekoduje base64, obcinając ewentualny prefiks data URI.
+     *
+     * @throws IllegalArgumentException przy znaku spoza alfabetu albo złej długości danych
+     */
+    public static byte[] decode(String base64) {
+        int start = 0;
+        if (base64.startsWith("data:")) {
+            int comma = base64.indexOf(',');
+            if (comma > 0 && comma < base64.length() - 1) {
+                start = comma + 1;
+                CoreLog.d(TAG, "Stripped data URI prefix from base64");
+            } else {
+                CoreLog.w(TAG, "Bad data: prefix or no comma found");
+            }
+        }
+        return decoder.decode(base64, start);
+    }
+}
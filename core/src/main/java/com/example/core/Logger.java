@@ -0,0 +1,18 @@
+package com.example.core;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Wyjście logów biblioteki. Aplikacja podpina logcat, narzędzia JVM mogą
+ * zostawić domyślny java.util.logging albo podać własny.
+ * Poziomy mają te same wartości co w android.util.Log.
+ */
+public interface Logger {
+
+    int DEBUG = 3;
+    int INFO = 4;
+    int WARN = 5;
+    int ERROR = 6;
+
+    void log(int level, String tag, String message, @Nullable Throwable error);
+}
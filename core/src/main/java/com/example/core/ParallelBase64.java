@@ -0,0 +1,217 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Domyślny {@link Base64Decoder}. Znaki spoza alfabetu base64 (białe znaki, łamania linii
+ * wstawiane przez serwis, '\f' itp.) są pomijane, jak w android.util.Base64. Duże dane
+ * (od {@link #PARALLEL_THRESHOLD} znaków) są dzielone na części zaczynające się
+ * na granicy czwórek znaków i dekodowane równolegle do jednej tablicy wynikowej.
+ */
+public final class ParallelBase64 implements Base64Decoder {
+
+    /** Od tylu znaków base64 dekodowanie idzie na kilku rdzeniach. */
+    public static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+    /** Znak spoza alfabetu - pomijany, jak w android.util.Base64. */
+    private static final int SKIP = -1;
+    private static final int PAD = -3;
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, SKIP);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = i;
+        }
+        DECODE['='] = PAD;
+    }
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static ExecutorService pool;
+
+    @NonNull
+    @Override
+    public byte[] decode(@NonNull String text, int start) {
+        int length = text.length() - start;
+        int chunks = length >= PARALLEL_THRESHOLD ? Math.min(THREADS, length / (PARALLEL_THRESHOLD / 4)) : 1;
+        return chunks > 1 ? decodeParallel(text, start, chunks) : decodeSerial(text, start);
+    }
+
+    private static byte[] decodeSerial(String s, int start) {
+        int[] sig = significant(s, start, s.length());
+        byte[] out = new byte[outputLength(sig[0], sig[1])];
+        decodeRange(s, start, s.length(), 0, out);
+        return out;
+    }
+
+    private static byte[] decodeParallel(String s, int start, int chunks) {
+        int[] bounds = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            bounds[i] = start + (int) ((long) (s.length() - start) * i / chunks);
+        }
+
+        // Przebieg 1: liczba znaków znaczących w każdej części - z niej wynika,
+        // od którego bajtu wyjścia zaczyna się część i gdzie wypada granica czwórki.
+        List<Future<int[]>> counts = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int from = bounds[i], to = bounds[i + 1];
+            counts.add(pool().submit(() -> significant(s, from, to)));
+        }
+        long[] before = new long[chunks];
+        long total = 0;
+        for (int i = 0; i < chunks; i++) {
+            before[i] = total;
+            total += await(counts.get(i))[0];
+        }
+        byte[] out = new byte[outputLength(total, trailingPads(s, start))];
+
+        // Przebieg 2: każda część dekoduje czwórki, które się w niej zaczynają.
+        List<Future<?>> parts = new ArrayList<>(chunks - 1);
+        for (int i = 0; i < chunks - 1; i++) {
+            int from = bounds[i], to = bounds[i + 1];
+            long sigBefore = before[i];
+            parts.add(pool().submit(() -> decodeRange(s, from, to, sigBefore, out)));
+        }
+        decodeRange(s, bounds[chunks - 1], bounds[chunks], before[chunks - 1], out);
+        for (Future<?> f : parts) await(f);
+        return out;
+    }
+
+    /** {liczba znaków znaczących w [from, to), liczba końcowych '='}. */
+    private static int[] significant(String s, int from, int to) {
+        int count = 0, pads = 0;
+        for (int i = from; i < to; i++) {
+            int v = value(s.charAt(i));
+            if (v == SKIP) continue;
+            count++;
+            pads = v == PAD ? pads + 1 : 0;
+        }
+        return new int[]{count, pads};
+    }
+
+    private static int trailingPads(String s, int start) {
+        int pads = 0;
+        for (int i = s.length() - 1; i >= start && pads < 3; i--) {
+            int v = value(s.charAt(i));
+            if (v == SKIP) continue;
+            if (v != PAD) break;
+            pads++;
+        }
+        return pads;
+    }
+
+    private static int outputLength(long significant, int pads) {
+        // Brak dopełnienia '=' jest tolerowany, jak w android.util.Base64.
+        long data = significant - pads;
+        if (data % 4 == 1 || pads > 2) {
+            throw new IllegalArgumentException("bad base-64 length");
+        }
+        long bytes = data * 6 / 8;
+        if (bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("base64 too large");
+        return (int) bytes;
+    }
+
+    /**
+     * Dekoduje czwórki zaczynające się w [from, to). Znaki przed pierwszą granicą
+     * czwórki należą do poprzedniej części; ostatnia czwórka może sięgać za {@code to}.
+     */
+    private static void decodeRange(String s, int from, int to, long sigBefore, byte[] out) {
+        int n = s.length();
+        int i = from;
+        long sig = sigBefore;
+        while (i < to && sig % 4 != 0) {
+            if (value(s.charAt(i)) != SKIP) sig++;
+            i++;
+        }
+        int o = (int) (sig / 4 * 3);
+
+        int[] quad = new int[4];
+        while (true) {
+            while (i < to && value(s.charAt(i)) == SKIP) i++;
+            if (i >= to) return;
+
+            int got = 0;
+            while (got < 4 && i < n) {
+                int v = value(s.charAt(i++));
+                if (v == SKIP) continue;
+                quad[got++] = v;
+            }
+
+            int bits = 0, data = 0;
+            for (int k = 0; k < got && quad[k] != PAD; k++) {
+                bits = (bits << 6) | quad[k];
+                data++;
+            }
+            for (int k = data; k < got; k++) {
+                if (quad[k] != PAD) throw new IllegalArgumentException("bad base-64 padding");
+            }
+            if (data < 2) {
+                throw new IllegalArgumentException("bad base-64 padding");
+            }
+            // 4 znaki → 3 bajty, 3 → 2, 2 → 1.
+            bits <<= 6 * (4 - data);
+            if (data >= 2 && o < out.length) out[o++] = (byte) (bits >> 16);
+            if (data >= 3 && o < out.length) out[o++] = (byte) (bits >> 8);
+            if (data == 4 && o < out.length) out[o++] = (byte) bits;
+            if (data < 4) {
+                // Dopełnienie albo koniec danych - dalej mogą być już tylko znaki pomijane.
+                while (i < n) {
+                    if (value(s.charAt(i++)) != SKIP) {
+                        throw new IllegalArgumentException("bad base-64 padding");
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private static int value(char c) {
+        return c < 128 ? DECODE[c] : SKIP;
+    }
+
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            AtomicInteger seq = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(THREADS, r -> {
+                Thread t = new Thread(r, "base64-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Czeka na część bez reagowania na przerwanie: wywłaszczone zadanie (np. prefetch)
+     * dostaje kompletny wynik zamiast wyjątku, a flaga przerwania jest przywracana,
+     * więc wołający może przerwać się sam po dekodowaniu.
+     */
+    private static <T> T await(Future<T> f) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return f.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException) throw (IllegalArgumentException) cause;
+            throw new IllegalStateException("base64 decode failed", cause);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+}
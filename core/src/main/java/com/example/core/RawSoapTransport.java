@@ -0,0 +1,160 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Transport bez ksoap2: gotowy szablon koperty z {@link SoapTransport.Operation}
+ * jest zapisywany prosto do strumienia {@link HttpURLConnection}, a odpowiedź
+ * czytana strumieniowo przez {@link EnvelopeParser} aż do elementu ImageInBase64.
+ * Połączenie nie jest zamykane przez disconnect(), więc zostaje w puli keep-alive.
+ */
+public class RawSoapTransport implements SoapTransport {
+
+    private static final String TAG = "RawSoapTransport";
+
+    private final URL url;
+    private final int timeoutMs;
+
+    public RawSoapTransport(String url, int timeoutMs) {
+        try {
+            this.url = new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Bad service URL " + url, e);
+        }
+        this.timeoutMs = timeoutMs;
+    }
+
+    @NonNull
+    @Override
+    public Response call(@NonNull Operation op, @NonNull String[] values, @Nullable String ifNoneMatch)
+            throws IOException {
+        if (values.length != op.params.length) {
+            throw new IllegalArgumentException(op.name + " expects " + op.params.length + " values");
+        }
+
+        byte[][] encoded = new byte[values.length][];
+        int length = 0;
+        for (byte[] part : op.template) length += part.length;
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = escape(values[i]).getBytes(StandardCharsets.UTF_8);
+            length += encoded[i].length;
+        }
+
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setConnectTimeout(timeoutMs);
+        conn.setReadTimeout(timeoutMs);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(length);
+        conn.setRequestProperty("Content-Type", "text/xml;charset=utf-8");
+        conn.setRequestProperty("SOAPAction", "\"\"");
+        if (ifNoneMatch != null) {
+            conn.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(op.template[0]);
+            for (int i = 0; i < encoded.length; i++) {
+                out.write(encoded[i]);
+                out.write(op.template[i + 1]);
+            }
+        }
+
+        int code = conn.getResponseCode();
+        if (isNotModified(code, ifNoneMatch)) {
+            InputStream err = conn.getErrorStream();
+            if (err != null) {
+                try (InputStream in = err) {
+                    drain(in);
+                }
+            }
+            return new Response(true, ifNoneMatch, null);
+        }
+        if (code < 200 || code >= 300) {
+            String body = readResponse(conn);
+            String message = "HTTP " + code + " from " + op.name;
+            if (code == HttpURLConnection.HTTP_INTERNAL_ERROR && body.contains("Fault")) {
+                // SOAP Fault przychodzi jako 500. Poprawny Fault to błąd serwisu (FaultException);
+                // tylko koperta, której nie da się sparsować, jest błędem formatu.
+                try {
+                    EnvelopeParser.readImage(
+                            new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), -1);
+                } catch (FaultException e) {
+                    throw new FaultException(message + ": " + e.getMessage());
+                } catch (FormatException e) {
+                    throw new FormatException(message + ": " + body.trim(), e);
+                }
+            }
+            throw new IOException(message);
+        }
+
+        String etag = conn.getHeaderField("ETag");
+        try (InputStream in = conn.getInputStream()) {
+            String base64 = EnvelopeParser.readImage(in, conn.getContentLength());
+            drain(in);
+            return new Response(false, etag, base64);
+        }
+    }
+
+    /**
+     * Dla POST (RFC 7232 §3.2) niespełnione If-None-Match to 412, nie 304 -
+     * serwer może odpowiedzieć jednym albo drugim; oba znaczą, że ETag jest aktualny.
+     */
+    static boolean isNotModified(int code, @Nullable String ifNoneMatch) {
+        return code == HttpURLConnection.HTTP_NOT_MODIFIED
+                || (ifNoneMatch != null && code == HttpURLConnection.HTTP_PRECON_FAILED);
+    }
+
+    /** Doczytuje resztę koperty, żeby połączenie mogło wrócić do puli. */
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[512];
+        while (in.read(buf) != -1) {
+            // nic
+        }
+    }
+
+    private static String readResponse(HttpURLConnection conn) throws IOException {
+        int code = conn.getResponseCode();
+        InputStream in = code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream();
+        if (in == null) return "";
+
+        StringBuilder sb = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+        }
+
+        CoreLog.d(TAG, "HTTP " + code + " RESPONSE:\n" + sb);
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '&' || c == '<' || c == '>') {
+                return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+            }
+        }
+        return value;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "raw-http";
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sposób wysłania operacji SOAP do serwisu mapy i wyciągnięcia z odpowiedzi
+ * elementu ImageInBase64. W bibliotece jest {@link RawSoapTransport}; aplikacja
+ * może dołożyć inne (np. zapasowy przez ksoap2).
+ */
+public interface SoapTransport {
+
+    /**
+     * Wywołuje operację z wartościami parametrów w kolejności z {@link Operation}.
+     * Przy {@code ifNoneMatch} wysyła If-None-Match i na 304 albo 412 (odpowiedź na
+     * warunkowy POST) zwraca odpowiedź bez obrazu.
+     */
+    @NonNull
+    Response call(@NonNull Operation op, @NonNull String[] values, @Nullable String ifNoneMatch)
+            throws IOException;
+
+    /** Odpowiedź serwisu; {@code base64} jest null tylko przy {@code notModified}. */
+    final class Response {
+        public final boolean notModified;
+        @Nullable
+        public final String etag;
+        @Nullable
+        public final String base64;
+
+        public Response(boolean notModified, @Nullable String etag, @Nullable String base64) {
+            this.notModified = notModified;
+            this.etag = etag;
+            this.base64 = base64;
+        }
+    }
+
+    /**
+     * Błąd formatu: odpowiedź nie daje się sparsować. Tylko po takim błędzie ma sens
+     * ponowienie innym transportem.
+     */
+    class FormatException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public FormatException(String message) {
+            super(message);
+        }
+
+        public FormatException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Poprawnie zbudowany SOAP Fault z treścią faultstring - serwis odpowiedział
+     * błędem, więc ponowienie innym transportem nic nie da.
+     */
+    class FaultException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public FaultException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Operacja serwisu wraz z gotowym szablonem koperty. Szablon to stałe fragmenty
+     * w UTF-8 przeplatane wartościami parametrów, budowane raz przy tworzeniu operacji.
+     */
+    final class Operation {
+        public final String namespace;
+        public final String name;
+        public final String[] params;
+        /** {@code params.length + 1} fragmentów; wartość i-tego parametru idzie między {@code template[i]} a {@code template[i + 1]}. */
+        final byte[][] template;
+
+        public Operation(String namespace, String name, String... params) {
+            this.namespace = namespace;
+            this.name = name;
+            this.params = params;
+            this.template = compile(namespace, name, params);
+        }
+
+        private static byte[][] compile(String namespace, String name, String[] params) {
+            String[] parts = new String[params.length + 1];
+            StringBuilder sb = new StringBuilder()
+                    .append("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
+                    .append("<v:Envelope xmlns:v=\"http://schemas.xmlsoap.org/soap/envelope/\">")
+                    .append("<v:Header /><v:Body>")
+                    .append("<n0:").append(name).append(" xmlns:n0=\"").append(namespace).append("\">");
+            for (int i = 0; i < params.length; i++) {
+                if (i > 0) sb.append("</n0:").append(params[i - 1]).append('>');
+                sb.append("<n0:").append(params[i]).append('>');
+                parts[i] = sb.toString();
+                sb.setLength(0);
+            }
+            if (params.length > 0) sb.append("</n0:").append(params[params.length - 1]).append('>');
+            sb.append("</n0:").append(name).append("></v:Body></v:Envelope>");
+            parts[params.length] = sb.toString();
+
+            byte[][] out = new byte[parts.length][];
+            for (int i = 0; i < parts.length; i++) {
+                out[i] = parts[i].getBytes(StandardCharsets.UTF_8);
+            }
+            return out;
+        }
+    }
+}
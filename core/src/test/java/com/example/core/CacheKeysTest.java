@@ -0,0 +1,43 @@
+package com.example.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CacheKeysTest {
+
+    @Test
+    public void pixelKeyRoundTrip() {
+        String key = CacheKeys.pixelKey(10, 20, 300, 400);
+        assertEquals("px:10,20,300,400", key);
+        assertArrayEquals(new int[]{10, 20, 300, 400}, CacheKeys.parsePixelKey(key));
+    }
+
+    @Test
+    public void geoKeyRoundTrip() {
+        String key = CacheKeys.geoKey(52.25, 21.0, 52.2, 21.05);
+        assertArrayEquals(new double[]{52.25, 21.0, 52.2, 21.05}, CacheKeys.parseGeoKey(key), 0);
+    }
+
+    @Test
+    public void parseRejectsOtherKeys() {
+        assertNull(CacheKeys.parsePixelKey("geo:1,2,3,4"));
+        assertNull(CacheKeys.parsePixelKey("px:1,2,3"));
+        assertNull(CacheKeys.parsePixelKey("px:1,2,3,x"));
+        assertNull(CacheKeys.parseGeoKey("px:1,2,3,4"));
+        assertNull(CacheKeys.parseGeoKey("geo:1,2,3,4,5"));
+    }
+
+    @Test
+    public void hashIsStableSha1Hex() {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", CacheKeys.hash("abc"));
+        assertEquals(CacheKeys.hash("px:1,2,3,4"), CacheKeys.hash("px:1,2,3,4"));
+        assertNotEquals(CacheKeys.hash("px:1,2,3,4"), CacheKeys.hash("px:1,2,3,5"));
+    }
+
+    @Test
+    public void sha256Hex() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                CacheKeys.sha256Hex("abc".getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+    }
+}
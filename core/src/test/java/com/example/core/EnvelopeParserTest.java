@@ -0,0 +1,93 @@
+package com.example.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class EnvelopeParserTest {
+
+    private static final String OPEN = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+            + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>";
+    private static final String CLOSE = "</soap:Body></soap:Envelope>";
+
+    private static String parse(String body) throws IOException {
+        byte[] bytes = (OPEN + body + CLOSE).getBytes(StandardCharsets.UTF_8);
+        return EnvelopeParser.readImage(new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    @Test
+    public void readsImageWithAnyPrefix() throws IOException {
+        assertEquals("aGVsbG8=", parse("<ns2:GetInitialMapResponse xmlns:ns2=\"urn:x\">"
+                + "<ns2:ImageInBase64>\n  aGVsbG8=\n</ns2:ImageInBase64></ns2:GetInitialMapResponse>"));
+    }
+
+    @Test
+    public void readsSelfClosingImageAsEmpty() throws IOException {
+        assertEquals("", parse("<ImageInBase64/>"));
+    }
+
+    @Test
+    public void expandsEntities() throws IOException {
+        assertEquals("a<b>&\"'AB", parse("<ImageInBase64>a&lt;b&gt;&amp;&quot;&apos;&#65;&#x42;</ImageInBase64>"));
+    }
+
+    @Test
+    public void readsCdataContent() throws IOException {
+        assertEquals("aGVs<x>]]bG8=", parse("<ImageInBase64><![CDATA[aGVs<x>]]]]><![CDATA[bG8=]]></ImageInBase64>"));
+    }
+
+    @Test
+    public void mixesTextAndCdata() throws IOException {
+        assertEquals("ab&cd", parse("<ImageInBase64>a<![CDATA[b&c]]><!-- note -->d</ImageInBase64>"));
+    }
+
+    @Test
+    public void skipsCdataAndCommentsBeforeImage() throws IOException {
+        assertEquals("real", parse("<Note><![CDATA[<ImageInBase64>fake</ImageInBase64>]]></Note>"
+                + "<!-- <ImageInBase64>fake</ImageInBase64> --><ImageInBase64>real</ImageInBase64>"));
+    }
+
+    @Test
+    public void faultThrowsFaultException() {
+        try {
+            parse("<soap:Fault><faultcode>soap:Server</faultcode>"
+                    + "<faultstring>Bad &amp; wrong</faultstring></soap:Fault>");
+            fail("expected FaultException");
+        } catch (SoapTransport.FaultException e) {
+            assertEquals("SOAP Fault: Bad & wrong", e.getMessage());
+        } catch (IOException e) {
+            fail("unexpected " + e);
+        }
+    }
+
+    @Test
+    public void faultWithoutFaultstringThrowsFaultException() {
+        try {
+            parse("<soap:Fault><faultcode>soap:Server</faultcode></soap:Fault>");
+            fail("expected FaultException");
+        } catch (SoapTransport.FaultException e) {
+            assertEquals("SOAP Fault", e.getMessage());
+        } catch (IOException e) {
+            fail("unexpected " + e);
+        }
+    }
+
+    @Test(expected = SoapTransport.FormatException.class)
+    public void missingImageIsFormatError() throws IOException {
+        parse("<Other>x</Other>");
+    }
+
+    @Test(expected = SoapTransport.FormatException.class)
+    public void badEntityIsFormatError() throws IOException {
+        parse("<ImageInBase64>&bogus;</ImageInBase64>");
+    }
+
+    @Test(expected = SoapTransport.FormatException.class)
+    public void unterminatedCdataIsFormatError() throws IOException {
+        parse("<ImageInBase64><![CDATA[abc");
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.core;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParallelBase64Test {
+
+    private final ParallelBase64 decoder = new ParallelBase64();
+
+    private static byte[] randomBytes(int n) {
+        byte[] b = new byte[n];
+        new Random(n).nextBytes(b);
+        return b;
+    }
+
+    @Test
+    public void decodesPaddedAndUnpadded() {
+        assertEquals("hello", new String(decoder.decode("aGVsbG8=", 0), StandardCharsets.US_ASCII));
+        assertEquals("hello", new String(decoder.decode("aGVsbG8", 0), StandardCharsets.US_ASCII));
+        assertEquals("hi", new String(decoder.decode("aGk=", 0), StandardCharsets.US_ASCII));
+        assertEquals(0, decoder.decode("", 0).length);
+    }
+
+    @Test
+    public void decodesFromOffset() {
+        assertEquals("hello", new String(decoder.decode("data:aGVsbG8=", 5), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void skipsCharactersOutsideAlphabet() {
+        assertEquals("hello", new String(decoder.decode(" aG\r\nVs\f\tbG8*=\n", 0), StandardCharsets.US_ASCII));
+        assertEquals("hello", new String(decoder.decode("aGVsébG8=", 0), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void matchesJdkForAllSmallLengths() {
+        for (int n = 0; n < 64; n++) {
+            byte[] src = randomBytes(n);
+            assertArrayEquals("length " + n, src, decoder.decode(Base64.getEncoder().encodeToString(src), 0));
+        }
+    }
+
+    @Test
+    public void decodesLargeInputInParallel() {
+        byte[] src = randomBytes(3 * ParallelBase64.PARALLEL_THRESHOLD + 7);
+        String mime = Base64.getMimeEncoder().encodeToString(src);
+        assertTrue(mime.length() >= 2 * ParallelBase64.PARALLEL_THRESHOLD);
+        assertArrayEquals(src, decoder.decode(mime, 0));
+    }
+
+    @Test
+    public void finishesParallelDecodeWhenInterrupted() {
+        byte[] src = randomBytes(3 * ParallelBase64.PARALLEL_THRESHOLD + 7);
+        String text = Base64.getEncoder().encodeToString(src);
+        Thread.currentThread().interrupt();
+        try {
+            assertArrayEquals(src, decoder.decode(text, 0));
+        } finally {
+            assertTrue("interrupt flag must be kept", Thread.interrupted());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSingleTrailingCharacter() {
+        decoder.decode("aGVsb", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDataAfterPadding() {
+        decoder.decode("aGk=aGk=", 0);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.app;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.app.utils.AndroidLogger;
+import com.example.app.utils.CityMapService;
+import com.example.app.utils.FragmentCache;
+import com.example.app.utils.HistoryStore;
+import com.example.app.utils.InitialMapCache;
+import com.example.app.utils.MemoryBudget;
+import com.example.app.utils.RequestScheduler;
+import com.example.app.utils.TileComposer;
+import com.example.core.CacheKeys;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Okresowe rozgrzewanie cache: odświeża mapę startową i pobiera z wyprzedzeniem
+ * najczęściej używane obszary z {@link HistoryStore}. Działa tylko na sieci
+ * nielimitowanej podczas ładowania. Ukończone klucze są zapisywane, więc
+ * przerwany przebieg (wywłaszczenie, utrata warunków) wznawia się od miejsca przerwania.
+ */
+public class CacheWarmJobService extends JobService {
+
+    private static final String TAG = "CacheWarmJob";
+    private static final int JOB_ID = 4100;
+    private static final long PERIOD_MS = TimeUnit.HOURS.toMillis(12);
+    /** Niedokończony przebieg starszy niż to zaczyna się od nowa. */
+    private static final long CYCLE_MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_REGIONS = 8;
+
+    private static final String PREFS = "cache_warm";
+    private static final String KEY_DONE = "done";
+    private static final String KEY_CYCLE_STARTED = "cycle_started";
+    private static final String INITIAL_MAP = "initial-map";
+
+    @Nullable
+    private volatile RequestScheduler.Ticket ticket;
+    private volatile boolean stopped;
+
+    /** Planuje zadanie, jeśli nie jest już zaplanowane. */
+    public static void schedule(@NonNull Context context) {
+        JobScheduler js = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (js == null || js.getPendingJob(JOB_ID) != null) return;
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, CacheWarmJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(PERIOD_MS)
+                .setPersisted(true)
+                .build();
+        if (js.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.w(TAG, "Cannot schedule cache warming");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        // Proces mógł zostać uruchomiony tylko dla zadania, bez MainActivity.
+        AndroidLogger.install();
+        MemoryBudget.getInstance().attach(this);
+        FragmentCache.getInstance().attach(this);
+        InitialMapCache.getInstance().attach(this);
+        HistoryStore.getInstance().attach(this);
+
+        stopped = false;
+        // BATCH: żądania użytkownika wywłaszczają rozgrzewanie, a ponowione zadanie pomija gotowe klucze.
+        ticket = RequestScheduler.getInstance().submit(RequestScheduler.Priority.BATCH, () -> {
+            try {
+                if (!warm(params)) RequestScheduler.markAborted();
+            } catch (RuntimeException e) {
+                // Bez jobFinished() system trzymałby zadanie (i wake lock) do limitu czasu.
+                Log.e(TAG, "Cache warming crashed", e);
+                jobFinished(params, true);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        RequestScheduler.Ticket t = ticket;
+        if (t != null) t.cancel();
+        return true;
+    }
+
+    /** @return false, gdy przebieg został przerwany przed końcem */
+    private boolean warm(JobParameters params) {
+        SharedPreferences prefs = getSharedPreferences(PREFS, MODE_PRIVATE);
+        Set<String> done = startOrResumeCycle(prefs);
+        boolean failed = false;
+
+        if (!done.contains(INITIAL_MAP)) {
+            try {
+                InitialMapCache.getInstance().load();
+                markDone(prefs, done, INITIAL_MAP);
+            } catch (IOException e) {
+                Log.w(TAG, "Initial map refresh failed: " + e.getMessage());
+                failed = true;
+            }
+        }
+
+        for (HistoryStore.Entry entry : HistoryStore.getInstance().mostUsed(MAX_REGIONS)) {
+            if (interrupted()) return false;
+            if (done.contains(entry.key)) continue;
+            try {
+                int bytes = warmEntry(entry.key);
+                // Wywłaszczony prefetch kafli kończy się wcześniej - taki obszar nie jest jeszcze gotowy.
+                if (interrupted()) return false;
+                markDone(prefs, done, entry.key);
+                if (bytes > 0) Log.d(TAG, "Warmed " + entry.key + " (" + bytes + " B)");
+            } catch (IOException e) {
+                Log.w(TAG, "Warming " + entry.key + " failed: " + e.getMessage());
+                failed = true;
+            }
+        }
+
+        if (interrupted()) return false;
+        prefs.edit().remove(KEY_DONE).remove(KEY_CYCLE_STARTED).apply();
+        Log.d(TAG, "Cache warming finished" + (failed ? " with errors" : ""));
+        jobFinished(params, failed);
+        return true;
+    }
+
+    private static int warmEntry(String key) throws IOException {
+        int[] px = CacheKeys.parsePixelKey(key);
+        if (px != null) {
+            return TileComposer.getInstance().prefetch(px[0], px[1], px[2], px[3]);
+        }
+        double[] geo = CacheKeys.parseGeoKey(key);
+        if (geo != null) {
+            return FragmentCache.getInstance().prefetch(key, () -> CityMapService.getInstance()
+                    .getFragmentOfMapByCoordinate(geo[0], geo[1], geo[2], geo[3]));
+        }
+        return 0;
+    }
+
+    private boolean interrupted() {
+        return stopped || Thread.currentThread().isInterrupted();
+    }
+
+    private static Set<String> startOrResumeCycle(SharedPreferences prefs) {
+        long started = prefs.getLong(KEY_CYCLE_STARTED, 0);
+        long now = System.currentTimeMillis();
+        if (started == 0 || now - started > CYCLE_MAX_AGE_MS) {
+            prefs.edit().putLong(KEY_CYCLE_STARTED, now).remove(KEY_DONE).apply();
+            return new HashSet<>();
+        }
+        Set<String> done = new HashSet<>(prefs.getStringSet(KEY_DONE, new HashSet<>()));
+        if (!done.isEmpty()) Log.d(TAG, "Resuming cache warming, " + done.size() + " keys already done");
+        return done;
+    }
+
+    private static void markDone(SharedPreferences prefs, Set<String> done, String key) {
+        done.add(key);
+        prefs.edit().putStringSet(KEY_DONE, new HashSet<>(done)).apply();
+    }
+}
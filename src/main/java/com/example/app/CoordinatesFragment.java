@@ -1,6 +1,8 @@
 package com.example.app;
 
 import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.text.TextWatcher;
@@ -17,27 +19,43 @@ import androidx.fragment.app.Fragment;
 
 import com.example.app.databinding.LayoutCoordinatesBinding;
 import com.example.app.utils.CityMapService;
+import com.example.app.utils.FragmentCache;
+import com.example.app.utils.HistoryStore;
+import com.example.app.utils.MemoryBudget;
+import com.example.app.utils.RequestScheduler;
+import com.example.app.utils.ResultDelivery;
 import com.example.app.utils.SimpleWatcher;
+import com.example.app.utils.ThumbnailPipeline;
+import com.example.core.CacheKeys;
+import com.example.core.Coordinates;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.List;
 import java.util.Locale;
 import java.util.regex.Pattern;
 
 public class CoordinatesFragment extends Fragment {
 
+    private static final String BUDGET_NAME = "coordinates-output";
     private LayoutCoordinatesBinding binding;
 
     private static final Pattern COORD_PATTERN = Pattern.compile("^-?\\d{1,2}[.,]\\d{1,6}$");
     private ColorStateList normalTint;
+    private final ExportMenu exportMenu = new ExportMenu(this);
+    @Nullable
+    private String shownKey;
+    private HistoryAdapter historyAdapter;
     private static final ColorStateList ERROR_TINT = ColorStateList.valueOf(Color.RED);
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater,
                              @Nullable ViewGroup container,
                              @Nullable Bundle savedInstanceState) {
-        binding = LayoutCoordinatesBinding.inflate(inflater, container, false);
+        View pre = MainActivity.takePreinflated(this, R.layout.layout_coordinates);
+        binding = pre != null ? LayoutCoordinatesBinding.bind(pre) : LayoutCoordinatesBinding.inflate(inflater, container, false);
         return binding.getRoot();
     }
 
@@ -50,6 +68,11 @@ public class CoordinatesFragment extends Fragment {
                 com.google.android.material.R.color.design_default_color_background
         );
 
+        MemoryBudget.getInstance().register(BUDGET_NAME, MemoryBudget.PRIORITY_VISIBLE, () -> {
+            if (binding != null) binding.coordOutputImage.setImageDrawable(null);
+            MemoryBudget.getInstance().release(BUDGET_NAME);
+        });
+
         binding.btnSendCoordinates.setEnabled(false);
         binding.btnSendCoordinates.setAlpha(.6f);
 
@@ -60,6 +83,14 @@ public class CoordinatesFragment extends Fragment {
         binding.longitudeLeftVal.addTextChangedListener(watcher);
 
         binding.btnSendCoordinates.setOnClickListener(this::validateFields);
+        binding.coordOutputImage.setOnLongClickListener(v -> {
+            exportMenu.show(shownKey);
+            return true;
+        });
+
+        historyAdapter = new HistoryAdapter(this::restoreFromHistory);
+        binding.historyList.setAdapter(historyAdapter);
+        refreshHistory();
     }
 
     private void validateFields(View view) {
@@ -78,46 +109,72 @@ public class CoordinatesFragment extends Fragment {
         Double lLon = parseNumber(binding.longitudeLeftVal.getText().toString());
 
         boolean rangeOk = true;
-        rangeOk &= checkRange(binding.latitudeVal, rLat, -90, 90, "Latitude range -90..90");
-        rangeOk &= checkRange(binding.longitudeVal, rLon, -180, 180, "Longitude range -180..180");
-        rangeOk &= checkRange(binding.latitudeLeftVal, lLat, -90, 90, "Latitude range -90..90");
-        rangeOk &= checkRange(binding.longitudeLeftVal, lLon, -180, 180, "Longitude range -180..180");
+        rangeOk &= checkRange(binding.latitudeVal, Coordinates.isLatitude(rLat), "Latitude range -90..90");
+        rangeOk &= checkRange(binding.longitudeVal, Coordinates.isLongitude(rLon), "Longitude range -180..180");
+        rangeOk &= checkRange(binding.latitudeLeftVal, Coordinates.isLatitude(lLat), "Latitude range -90..90");
+        rangeOk &= checkRange(binding.longitudeLeftVal, Coordinates.isLongitude(lLon), "Longitude range -180..180");
         if (!rangeOk) return;
 
-        new Thread(() -> {
-            String msg = CityMapService
-                    .getInstance()
-                    .getFragmentOfMapByCoordinate(rLat, rLon, lLat, lLon);
+        String key = CacheKeys.geoKey(rLat, rLon, lLat, lLon);
+        String label = String.format(Locale.US, "%.6f, %.6f → %.6f, %.6f", rLat, rLon, lLat, lLon);
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.INTERACTIVE, () ->
+                loadAndShow(key, label, () -> CityMapService.getInstance()
+                        .getFragmentOfMapByCoordinate(rLat, rLon, lLat, lLon), false));
 
+    }
 
-            requireActivity().runOnUiThread(() -> {
-                if (!msg.contains("ERROR")) {
-                    showOutputImage(msg);
-                }
-            });
-        }).start();
-
+    /**
+     * Przywraca wynik z historii wyłącznie z cache, bez wywołania serwisu. Wpis, którego
+     * wyniku nie ma już w cache, znika z historii; przywrócenie nie liczy się jako nowe użycie.
+     */
+    private void restoreFromHistory(HistoryStore.Entry entry) {
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.INTERACTIVE, () ->
+                loadAndShow(entry.key, entry.label, () -> "ERROR: no longer cached", true));
     }
 
-    private void showOutputImage(String msg) {
-        if (!msg.startsWith("ERROR")) {
-            try {
-                byte[] bytes = android.util.Base64.decode(msg, android.util.Base64.DEFAULT);
+    private void loadAndShow(String key, String label, FragmentCache.Fetcher fetcher, boolean restore) {
+        String msg = null;
+        Bitmap bitmap = null;
+        try {
+            byte[] bytes = FragmentCache.getInstance().getOrFetch(key, fetcher);
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            if (bitmap == null) {
+                msg = "Error decoding image";
+            } else {
+                if (!restore) HistoryStore.getInstance().record(key, label);
+                ThumbnailPipeline.getInstance().submit(key, bitmap);
+            }
+        } catch (IOException e) {
+            msg = "ERROR: " + e.getMessage();
+            if (restore) HistoryStore.getInstance().remove(key);
+        }
 
-                android.graphics.Bitmap bitmap =
-                        android.graphics.BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        final Bitmap finalBitmap = bitmap;
+        final String finalMsg = msg;
+        ResultDelivery.getInstance().deliverImage(this, "output", finalBitmap,
+                () -> showOutputImage(key, finalBitmap, finalMsg));
+    }
 
-                binding.coordOutputImage.setImageBitmap(bitmap);
+    /** Historia jest czytana w wątku roboczym - pierwszy odczyt wczytuje plik. */
+    private void refreshHistory() {
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.VISIBLE_PLACEHOLDER, () -> {
+            List<HistoryStore.Entry> entries = HistoryStore.getInstance().entries("geo:");
+            ResultDelivery.getInstance().deliver(this, () -> historyAdapter.setEntries(entries));
+        });
+    }
 
-                clearAllFields();
+    private void showOutputImage(String key, @Nullable Bitmap bitmap, @Nullable String msg) {
+        if (bitmap != null) {
+            binding.coordOutputImage.setImageBitmap(bitmap);
+            shownKey = key;
+            MemoryBudget.getInstance().update(BUDGET_NAME, bitmap.getAllocationByteCount());
 
-            } catch (Exception e) {
-                Toast.makeText(requireContext(),
-                        "Error decoding image", Toast.LENGTH_SHORT).show();
-            }
+            clearAllFields();
+            refreshHistory();
 
         } else {
 
+            refreshHistory();
             new MaterialAlertDialogBuilder(requireContext())
                     .setTitle("Error")
                     .setMessage(msg)
@@ -172,8 +229,8 @@ public class CoordinatesFragment extends Fragment {
         return ok;
     }
 
-    private boolean checkRange(EditText field, Double val, double min, double max, String msg) {
-        if (val == null || val < min || val > max) {
+    private boolean checkRange(EditText field, boolean inRange, String msg) {
+        if (!inRange) {
             field.setError(msg);
             field.setBackgroundTintList(ERROR_TINT);
             return false;
@@ -199,6 +256,7 @@ public class CoordinatesFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        MemoryBudget.getInstance().unregister(BUDGET_NAME);
         binding = null;
     }
 }
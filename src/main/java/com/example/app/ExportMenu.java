@@ -0,0 +1,118 @@
+package com.example.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import com.example.app.utils.FragmentExporter;
+import com.example.app.utils.RequestScheduler;
+import com.example.app.utils.ResultDelivery;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+
+import java.io.IOException;
+
+/**
+ * Menu zapisu pokazywanego fragmentu mapy: do galerii, do wybranego pliku
+ * albo eksport wszystkich fragmentów z cache do wybranego katalogu.
+ * Musi zostać utworzone przy inicjalizacji fragmentu (rejestruje launchery SAF).
+ */
+class ExportMenu {
+
+    private static final String TAG = "ExportMenu";
+
+    private final Fragment fragment;
+    private final ActivityResultLauncher<String> createDocument;
+    private final ActivityResultLauncher<Uri> openTree;
+
+    @Nullable
+    private String pendingKey;
+
+    ExportMenu(Fragment fragment) {
+        this.fragment = fragment;
+        createDocument = fragment.registerForActivityResult(
+                new ActivityResultContracts.CreateDocument("image/*"), this::onDocumentCreated);
+        openTree = fragment.registerForActivityResult(
+                new ActivityResultContracts.OpenDocumentTree(), this::onTreeChosen);
+    }
+
+    void show(@Nullable String key) {
+        if (key == null) {
+            toast("Nothing to save yet");
+            return;
+        }
+        pendingKey = key;
+
+        String[] items = {"Save to gallery", "Save as…", "Export all cached fragments…"};
+        new MaterialAlertDialogBuilder(fragment.requireContext())
+                .setTitle("Save fragment")
+                .setItems(items, (d, which) -> {
+                    switch (which) {
+                        case 0: saveToGallery(key); break;
+                        case 1: chooseDocument(key); break;
+                        default: openTree.launch(null);
+                    }
+                })
+                .show();
+    }
+
+    private void saveToGallery(String key) {
+        Context app = fragment.requireContext().getApplicationContext();
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.INTERACTIVE, () -> {
+            try {
+                FragmentExporter.exportToGallery(app, key);
+                toast("Saved to Pictures");
+            } catch (IOException e) {
+                Log.w(TAG, "Save to gallery failed", e);
+                toast("Save failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Nazwa z rozszerzeniem zgodnym z formatem bajtów (PNG/JPEG) - ustalana poza wątkiem UI. */
+    private void chooseDocument(String key) {
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.INTERACTIVE, () -> {
+            try {
+                String name = FragmentExporter.suggestedName(key);
+                ResultDelivery.getInstance().deliver(fragment, () -> createDocument.launch(name));
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot prepare save as", e);
+                toast("Save failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void onDocumentCreated(@Nullable Uri uri) {
+        String key = pendingKey;
+        if (uri == null || key == null) return;
+
+        Context app = fragment.requireContext().getApplicationContext();
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.INTERACTIVE, () -> {
+            try {
+                FragmentExporter.exportToUri(app, key, uri);
+                toast("Saved");
+            } catch (IOException e) {
+                Log.w(TAG, "Save as failed", e);
+                toast("Save failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void onTreeChosen(@Nullable Uri treeUri) {
+        if (treeUri == null) return;
+        toast("Exporting in background…");
+        FragmentExporter.exportAllInBackground(fragment.requireContext(), treeUri,
+                (exported, failed) -> toast("Exported " + exported
+                        + (failed > 0 ? ", " + failed + " failed" : "")));
+    }
+
+    private void toast(String msg) {
+        ResultDelivery.getInstance().deliver(fragment, () ->
+                Toast.makeText(fragment.requireContext(), msg, Toast.LENGTH_SHORT).show());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.app;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.app.utils.HistoryStore;
+import com.example.app.utils.ThumbnailPipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Poziomy pasek miniatur poprzednich wyników. Miniatury dostarcza
+ * {@link ThumbnailPipeline}, kliknięcie przekazuje wpis do fragmentu.
+ */
+class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.Holder> {
+
+    interface OnEntryClick {
+        void onEntryClick(HistoryStore.Entry entry);
+    }
+
+    static class Holder extends RecyclerView.ViewHolder {
+        final ImageView thumb;
+
+        Holder(View v) {
+            super(v);
+            thumb = (ImageView) v;
+        }
+    }
+
+    private final List<HistoryStore.Entry> entries = new ArrayList<>();
+    private final OnEntryClick onClick;
+
+    HistoryAdapter(OnEntryClick onClick) {
+        this.onClick = onClick;
+    }
+
+    void setEntries(List<HistoryStore.Entry> newEntries) {
+        entries.clear();
+        entries.addAll(newEntries);
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_history, parent, false);
+        return new Holder(v);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull Holder holder, int position) {
+        HistoryStore.Entry entry = entries.get(position);
+        holder.thumb.setContentDescription(entry.label);
+        ThumbnailPipeline.getInstance().bind(entry.key, holder.thumb);
+        holder.thumb.setOnClickListener(v -> onClick.onEntryClick(entry));
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull Holder holder) {
+        holder.thumb.setTag(null);
+        holder.thumb.setImageDrawable(null);
+    }
+
+    @Override
+    public int getItemCount() {
+        return entries.size();
+    }
+}
@@ -1,19 +1,60 @@
 package com.example.app;
 
 import android.os.Bundle;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
+import androidx.annotation.LayoutRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
 
+import com.example.app.utils.AndroidLogger;
+import com.example.app.utils.FragmentCache;
+import com.example.app.utils.HistoryStore;
+import com.example.app.utils.InitialMapCache;
+import com.example.app.utils.MappedPixelCache;
+import com.example.app.utils.MemoryBudget;
+import com.example.app.utils.StartupTracer;
+import com.example.app.utils.ThumbnailPipeline;
 import com.google.android.material.tabs.TabLayout;
 
 public class MainActivity extends AppCompatActivity {
 
+    private static final String TAB_TAG_PREFIX = "tab-";
+    private static final int TAB_COUNT = 3;
+    private static final int[] TAB_LAYOUTS = {
+            R.layout.layout_coordinates, R.layout.layout_pixels, R.layout.fragment_area_select
+    };
+
     private TabLayout tabLayout;
 
+    /** Instancje fragmentów zakładek - tworzone leniwie, widoki budowane dopiero przy pierwszym wyborze. */
+    private final Fragment[] tabFragments = new Fragment[TAB_COUNT];
+    private int currentTab = -1;
+
+    /** Widoki zakładek napompowane w tle po pierwszej klatce; fragment zabiera swój w onCreateView. */
+    private final SparseArray<View> preinflated = new SparseArray<>();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long started = StartupTracer.begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
+        AndroidLogger.install();
+        MemoryBudget.getInstance().attach(this);
+        // attach() tylko zapamiętuje kontekst - katalogi i historia są czytane przy pierwszym użyciu, w tle.
+        FragmentCache.getInstance().attach(this);
+        InitialMapCache.getInstance().attach(this);
+        MappedPixelCache.getInstance().attach(this);
+        HistoryStore.getInstance().attach(this);
+        ThumbnailPipeline.getInstance().attach(this);
         setContentView(R.layout.activity_main);
 
         tabLayout = findViewById(R.id.tabLayout);
@@ -21,30 +62,123 @@ public class MainActivity extends AppCompatActivity {
         tabLayout.addTab(tabLayout.newTab().setText("Pixels"));
         tabLayout.addTab(tabLayout.newTab().setText("Map preview"));
 
-        loadFragment(new CoordinatesFragment());
+        FragmentManager fm = getSupportFragmentManager();
+        for (int i = 0; i < TAB_COUNT; i++) {
+            tabFragments[i] = fm.findFragmentByTag(TAB_TAG_PREFIX + i);
+        }
+
+        showTab(0);
         TabLayout.Tab first = tabLayout.getTabAt(0);
         if (first != null) first.select();
 
         tabLayout.addOnTabSelectedListener(new TabLayout.OnTabSelectedListener() {
             @Override public void onTabSelected(TabLayout.Tab tab) {
-                Fragment fragment;
-                switch (tab.getPosition()) {
-                    case 0: fragment = new CoordinatesFragment(); break;
-                    case 1: fragment = new PixelsFragment(); break;
-                    case 2: fragment = new MapPreviewFragment(); break;
-                    default: fragment = new CoordinatesFragment();
-                }
-                loadFragment(fragment);
+                showTab(tab.getPosition());
             }
             @Override public void onTabUnselected(TabLayout.Tab tab) {}
             @Override public void onTabReselected(TabLayout.Tab tab) {}
         });
+
+        watchFirstFrame();
+        StartupTracer.end("MainActivity.onCreate", started);
+    }
+
+    /**
+     * Widok zakładki napompowany wcześniej przez {@link #preinflateTabs()} albo null -
+     * wtedy fragment pompuje go sam. Każdy widok może zostać użyty tylko raz.
+     */
+    @Nullable
+    static View takePreinflated(@NonNull Fragment fragment, @LayoutRes int layout) {
+        if (!(fragment.getActivity() instanceof MainActivity)) return null;
+        SparseArray<View> views = ((MainActivity) fragment.getActivity()).preinflated;
+        View v = views.get(layout);
+        views.remove(layout);
+        return v;
+    }
+
+    /**
+     * Po pierwszej klatce zgłasza czas startu i - gdy główny wątek będzie wolny -
+     * pompuje w tle widoki pozostałych zakładek, żeby przełączenie nie płaciło za inflację.
+     */
+    private void watchFirstFrame() {
+        View decor = getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            /** onDraw przychodzi do każdej klatki, zanim usunięcie listenera się wykona. */
+            private boolean seen;
+
+            @Override
+            public void onDraw() {
+                if (seen) return;
+                seen = true;
+                StartupTracer.reportFirstFrame();
+                decor.post(() -> decor.getViewTreeObserver().removeOnDrawListener(this));
+                Looper.myQueue().addIdleHandler(() -> {
+                    preinflateTabs();
+                    CacheWarmJobService.schedule(MainActivity.this);
+                    return false;
+                });
+            }
+        });
+    }
+
+    /**
+     * Pompuje układy jeszcze niepokazanych zakładek w wątku AsyncLayoutInflater.
+     * Widoki, których nie da się zbudować poza wątkiem UI, AsyncLayoutInflater
+     * pompuje w wątku UI - tak samo jak przy pierwszym wyborze zakładki.
+     */
+    private void preinflateTabs() {
+        long started = StartupTracer.begin("MainActivity.preinflateTabs");
+        ViewGroup container = findViewById(R.id.tabsContent);
+        AsyncLayoutInflater inflater = new AsyncLayoutInflater(this);
+        for (int i = 0; i < TAB_COUNT; i++) {
+            Fragment f = tabFragments[i];
+            if (i == currentTab || (f != null && f.isAdded())) continue;
+            inflater.inflate(TAB_LAYOUTS[i], container, (view, resid, parent) -> {
+                if (!isDestroyed()) preinflated.put(resid, view);
+            });
+        }
+        StartupTracer.end("MainActivity.preinflateTabs", started);
+    }
+
+    private Fragment tabFragment(int position) {
+        if (tabFragments[position] == null) {
+            switch (position) {
+                case 1: tabFragments[position] = new PixelsFragment(); break;
+                case 2: tabFragments[position] = new MapPreviewFragment(); break;
+                default: tabFragments[position] = new CoordinatesFragment();
+            }
+        }
+        return tabFragments[position];
     }
 
-    private void loadFragment(Fragment fragment) {
-        getSupportFragmentManager()
-                .beginTransaction()
-                .replace(R.id.tabsContent, fragment)
-                .commit();
+    /**
+     * Pokazuje zakładkę, ukrywając poprzednią zamiast ją niszczyć. Widok zakładki
+     * jest budowany dopiero przy jej pierwszym wyborze.
+     */
+    private void showTab(int position) {
+        if (position < 0 || position >= TAB_COUNT) position = 0;
+        if (position == currentTab) return;
+
+        long started = StartupTracer.begin("MainActivity.showTab" + position);
+        FragmentManager fm = getSupportFragmentManager();
+        FragmentTransaction tx = fm.beginTransaction();
+
+        for (int i = 0; i < TAB_COUNT; i++) {
+            Fragment f = tabFragments[i];
+            if (i != position && f != null && f.isAdded() && !f.isHidden()) {
+                tx.hide(f);
+            }
+        }
+
+        Fragment fragment = tabFragment(position);
+        if (fragment.isAdded()) {
+            tx.show(fragment);
+        } else {
+            tx.add(R.id.tabsContent, fragment, TAB_TAG_PREFIX + position);
+        }
+        tx.commit();
+
+        currentTab = position;
+        StartupTracer.end("MainActivity.showTab" + position, started);
     }
 }
@@ -7,9 +7,7 @@ import android.graphics.Matrix;
 import android.graphics.PointF;
 import android.graphics.RectF;
 import android.os.Bundle;
-import android.util.Base64;
 import android.util.Log;
-import android.view.GestureDetector;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -22,11 +20,22 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import com.example.app.databinding.FragmentAreaSelectBinding;
-import com.example.app.utils.CityMapService;
+import com.example.app.utils.FragmentCache;
+import com.example.app.utils.InitialMapCache;
+import com.example.app.utils.MappedPixelCache;
+import com.example.app.utils.MemoryBudget;
+import com.example.app.utils.RequestScheduler;
+import com.example.app.utils.ResultDelivery;
+import com.example.app.utils.SelectionPrefetcher;
+import com.example.app.utils.TileComposer;
+import com.example.core.CacheKeys;
+
+import java.io.IOException;
 
 public class MapPreviewFragment extends Fragment {
 
     private static final String TAG = "MapPreviewFragment";
+    private static final String BUDGET_NAME = "map-preview";
     private FragmentAreaSelectBinding binding;
 
     private final PointF pStart = new PointF();
@@ -35,11 +44,15 @@ public class MapPreviewFragment extends Fragment {
 
     @Nullable
     private Bitmap currentBitmap = null;
+    private boolean bitmapReleased = false;
+
+    private final ExportMenu exportMenu = new ExportMenu(this);
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
                              @Nullable Bundle savedInstanceState) {
-        binding = FragmentAreaSelectBinding.inflate(inflater, container, false);
+        View pre = MainActivity.takePreinflated(this, R.layout.fragment_area_select);
+        binding = pre != null ? FragmentAreaSelectBinding.bind(pre) : FragmentAreaSelectBinding.inflate(inflater, container, false);
         return binding.getRoot();
     }
 
@@ -52,37 +65,34 @@ public class MapPreviewFragment extends Fragment {
         binding.overlay.setBackground(null);
         binding.overlay.setClickable(true);
 
-        loadInitialMap();
-
-        GestureDetector detector = new GestureDetector(requireContext(),
-                new GestureDetector.SimpleOnGestureListener() {
-                    @Override
-                    public boolean onDown(MotionEvent e) {
-                        return true;
-                    }
+        MemoryBudget.getInstance().register(BUDGET_NAME, MemoryBudget.PRIORITY_VISIBLE,
+                this::releaseBitmap);
 
-                    @Override
-                    public boolean onSingleTapUp(MotionEvent e) {
-                        float x = e.getX();
-                        float y = e.getY();
-
-                        if (!firstSet) {
-                            pStart.set(x, y);
-                            firstSet = true;
-                            binding.coordsLabel.setText("Select another point");
-                            binding.overlay.setRect(null);
-                        } else {
-                            pEnd.set(x, y);
-                            secondSet = true;
-                            RectF r = normalizedRect(pStart, pEnd);
-                            binding.overlay.setRect(r);
-                            binding.coordsLabel.setText("Selected");
-                        }
-                        return true;
-                    }
-                });
+        loadInitialMap();
 
-        binding.overlay.setOnTouchListener((view1, event) -> detector.onTouchEvent(event));
+        // Punkt jest stawiany przy podniesieniu palca; do tego czasu lupa pokazuje
+        // piksele mapy pod palcem, więc można go dosunąć przed puszczeniem.
+        binding.overlay.setOnTouchListener((view1, event) -> {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    binding.overlay.setLoupeSource(currentBitmap, binding.previewImage.getImageMatrix());
+                    binding.overlay.showLoupe(event.getX(), event.getY());
+                    return true;
+                case MotionEvent.ACTION_MOVE:
+                    binding.overlay.showLoupe(event.getX(), event.getY());
+                    return true;
+                case MotionEvent.ACTION_UP:
+                    binding.overlay.hideLoupe();
+                    placePoint(event.getX(), event.getY());
+                    view1.performClick();
+                    return true;
+                case MotionEvent.ACTION_CANCEL:
+                    binding.overlay.hideLoupe();
+                    return true;
+                default:
+                    return false;
+            }
+        });
 
         binding.btnConfirmArea.setOnClickListener(v1 -> {
             if (!secondSet) {
@@ -102,74 +112,74 @@ public class MapPreviewFragment extends Fragment {
         });
     }
 
+    private void placePoint(float x, float y) {
+        if (!firstSet) {
+            pStart.set(x, y);
+            firstSet = true;
+            binding.coordsLabel.setText("Select another point");
+            binding.overlay.setRect(null);
+        } else {
+            pEnd.set(x, y);
+            secondSet = true;
+            RectF r = normalizedRect(pStart, pEnd);
+            binding.overlay.setRect(r);
+            binding.coordsLabel.setText("Selected");
+        }
+    }
+
     /**
-     * Ładuje mapę startową z serwisu i ustawia ją w ImageView.
+     * Ładuje mapę startową (z cache, rewalidowaną w serwisie) i ustawia ją w ImageView.
      * Dodatkowo tymczasowo ukrywa overlay przed ustawieniem obrazka.
      */
     private void loadInitialMap() {
-        new Thread(() -> {
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.VISIBLE_PLACEHOLDER, () -> {
             Log.d(TAG, "Requesting initial map from service...");
-            String base64 = CityMapService.getInstance().getInitialMap();
-
-            if (base64 == null) {
-                Log.w(TAG, "getInitialMap returned null");
-                requireActivity().runOnUiThread(() ->
-                        Toast.makeText(requireContext(), "GetInitialMap returned null", Toast.LENGTH_LONG).show());
-                return;
-            }
-
-            Log.d(TAG, "Raw base64 startsWith data:? " + base64.startsWith("data:"));
-            if (base64.startsWith("ERROR:")) {
-                String msg = "GetInitialMap error: " + base64;
+            byte[] bytes;
+            try {
+                bytes = InitialMapCache.getInstance().load();
+            } catch (IOException e) {
+                String msg = e.getMessage();
                 Log.w(TAG, msg);
-                requireActivity().runOnUiThread(() ->
+                ResultDelivery.getInstance().deliver(this, () ->
                         Toast.makeText(requireContext(), msg, Toast.LENGTH_LONG).show());
                 return;
             }
 
-            if (base64.startsWith("data:")) {
-                int comma = base64.indexOf(',');
-                if (comma > 0 && comma < base64.length() - 1) {
-                    base64 = base64.substring(comma + 1);
-                    Log.d(TAG, "Stripped data URI prefix from base64");
-                } else {
-                    Log.w(TAG, "Bad data: prefix or no comma found");
-                }
-            }
-
             try {
-                byte[] bytes = Base64.decode(base64, Base64.DEFAULT);
-                Log.d(TAG, "Decoded bytes length = " + (bytes == null ? "null" : bytes.length));
-
-                if (bytes == null || bytes.length == 0) {
-                    Log.e(TAG, "Decoded bytes empty");
-                    requireActivity().runOnUiThread(() ->
-                            Toast.makeText(requireContext(), "Decoded data empty", Toast.LENGTH_LONG).show());
-                    return;
-                }
+                Log.d(TAG, "Initial map bytes length = " + bytes.length);
 
-                BitmapFactory.Options opts = new BitmapFactory.Options();
-                opts.inPreferredConfig = Bitmap.Config.RGB_565;
-                Bitmap bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts);
+                // Zdekodowane piksele z poprzedniego otwarcia - bez ponownej dekompresji.
+                String hash = InitialMapCache.getInstance().getContentHash();
+                Bitmap bmp = hash == null ? null : MappedPixelCache.getInstance().get(hash);
+                boolean decoded = bmp == null;
 
                 if (bmp == null) {
-                    Log.w(TAG, "Bitmap decode returned null with opts, trying without options");
-                    bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                }
+                    BitmapFactory.Options opts = new BitmapFactory.Options();
+                    opts.inPreferredConfig = Bitmap.Config.RGB_565;
+                    bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts);
+
+                    if (bmp == null) {
+                        Log.w(TAG, "Bitmap decode returned null with opts, trying without options");
+                        bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+                    }
+
+                    if (bmp == null) {
+                        Log.e(TAG, "Cannot decode initial image (bmp == null)");
+                        ResultDelivery.getInstance().deliver(this, () ->
+                                Toast.makeText(requireContext(), "Cannot decode initial image", Toast.LENGTH_LONG).show());
+                        return;
+                    }
 
-                if (bmp == null) {
-                    Log.e(TAG, "Cannot decode initial image (bmp == null)");
-                    requireActivity().runOnUiThread(() ->
-                            Toast.makeText(requireContext(), "Cannot decode initial image", Toast.LENGTH_LONG).show());
-                    return;
                 }
 
                 final Bitmap finalBmp = bmp;
-                requireActivity().runOnUiThread(() -> {
+                ResultDelivery.getInstance().deliverImage(this, "preview", finalBmp, () -> {
                     binding.overlay.setVisibility(View.GONE);
 
                     currentBitmap = finalBmp;
+                    bitmapReleased = false;
                     binding.previewImage.setImageBitmap(finalBmp);
+                    MemoryBudget.getInstance().update(BUDGET_NAME, finalBmp.getAllocationByteCount());
                     binding.previewImage.setVisibility(View.VISIBLE);
                     binding.previewImage.requestLayout();
                     binding.previewImage.invalidate();
@@ -184,49 +194,43 @@ public class MapPreviewFragment extends Fragment {
                     binding.coordsLabel.setText("Select points: upper left, down right");
                 });
 
+                // Zapis dopiero po przekazaniu do UI, żeby nie opóźniał pierwszego pokazania mapy.
+                // Bitmapa nie jest zwalniana przez recycle(), a to zadanie trzyma do niej referencję
+                // do końca zapisu, więc zwolnienie jej przez MemoryBudget zapisowi nie przeszkadza.
+                if (decoded && hash != null) MappedPixelCache.getInstance().put(hash, finalBmp);
+
             } catch (Exception ex) {
-                requireActivity().runOnUiThread(() ->
+                ResultDelivery.getInstance().deliver(this, () ->
                         Toast.makeText(requireContext(), "Decode error: " + ex.getMessage(), Toast.LENGTH_LONG).show());
             }
-        }).start();
+        });
     }
 
     private void sendSelectionToServer(int x1, int y1, int x2, int y2) {
         Toast.makeText(requireContext(), "Sending selection...", Toast.LENGTH_SHORT).show();
 
-        new Thread(() -> {
-            String base64 = CityMapService.getInstance()
-                    .getFragmentOfMap(x1, y1, x2, y2);
-
-            if (base64 == null || base64.startsWith("ERROR:")) {
-                String msg = (base64 == null) ? "Service returned null" : ("Service error: " + base64);
-                Log.w(TAG, msg);
-                requireActivity().runOnUiThread(() ->
-                        Toast.makeText(requireContext(), msg, Toast.LENGTH_LONG).show());
-                return;
-            }
-
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.INTERACTIVE, () -> {
             try {
-                byte[] bytes = Base64.decode(base64, Base64.DEFAULT);
-                Bitmap bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+                Bitmap bmp = TileComposer.getInstance().load(x1, y1, x2, y2);
 
-                if (bmp == null) {
-                    Log.e(TAG, "Decoded fragment bitmap is null");
-                    requireActivity().runOnUiThread(() ->
-                            Toast.makeText(requireContext(), "Cannot decode fragment image", Toast.LENGTH_LONG).show());
-                    return;
-                }
-
-                requireActivity().runOnUiThread(() ->
+                ResultDelivery.getInstance().deliverImage(this, "selection", bmp, () ->
                         showPreviewDialog(bmp, x1, y1, x2, y2));
+            } catch (IOException ex) {
+                String msg = ex.getMessage();
+                Log.w(TAG, msg);
+                ResultDelivery.getInstance().deliver(this, () ->
+                        Toast.makeText(requireContext(), msg, Toast.LENGTH_LONG).show());
             } catch (Exception ex) {
                 Log.e(TAG, "Decode error for fragment: " + ex.getMessage(), ex);
-                requireActivity().runOnUiThread(() ->
+                ResultDelivery.getInstance().deliver(this, () ->
                         Toast.makeText(requireContext(),
                                 "Decode error: " + ex.getMessage(),
                                 Toast.LENGTH_LONG).show());
             }
-        }).start();
+        });
+
+        // Po zgłoszeniu żądania interaktywnego - prefetch czeka, aż ono się skończy.
+        SelectionPrefetcher.getInstance().recordSelection(x1, y1, x2, y2);
     }
 
     private void showPreviewDialog(Bitmap crop, int x1, int y1, int x2, int y2) {
@@ -238,6 +242,8 @@ public class MapPreviewFragment extends Fragment {
                 .setMessage(String.format("x1=%d, y1=%d → x2=%d, y2=%d", x1, y1, x2, y2))
                 .setView(iv)
                 .setPositiveButton("OK", null)
+                .setNeutralButton("Save", (d, w) ->
+                        exportMenu.show(CacheKeys.pixelKey(x1, y1, x2, y2)))
                 .show();
     }
 
@@ -278,9 +284,46 @@ public class MapPreviewFragment extends Fragment {
         return Math.max(lo, Math.min(hi, v));
     }
 
+    /**
+     * Wywoływane przez {@link MemoryBudget} przy braku pamięci - mapa zostanie
+     * pobrana ponownie po powrocie do zakładki.
+     */
+    private void releaseBitmap() {
+        if (binding == null || currentBitmap == null) return;
+        binding.previewImage.setImageDrawable(null);
+        binding.overlay.setRect(null);
+        binding.overlay.hideLoupe();
+        binding.overlay.setLoupeSource(null, null);
+        currentBitmap = null;
+        bitmapReleased = true;
+        firstSet = false;
+        secondSet = false;
+        MemoryBudget.getInstance().release(BUDGET_NAME);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        reloadIfReleased();
+    }
+
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        if (!hidden) reloadIfReleased();
+    }
+
+    private void reloadIfReleased() {
+        if (bitmapReleased && binding != null) {
+            bitmapReleased = false;
+            loadInitialMap();
+        }
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        MemoryBudget.getInstance().unregister(BUDGET_NAME);
         currentBitmap = null;
         binding = null;
     }
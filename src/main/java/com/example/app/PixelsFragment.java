@@ -1,6 +1,7 @@
 package com.example.app;
 
 import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.text.TextWatcher;
@@ -16,25 +17,41 @@ import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
 import com.example.app.databinding.LayoutPixelsBinding;
-import com.example.app.utils.CityMapService;
+import com.example.app.utils.HistoryStore;
+import com.example.app.utils.MemoryBudget;
+import com.example.app.utils.RequestScheduler;
+import com.example.app.utils.ResultDelivery;
+import com.example.app.utils.SelectionPrefetcher;
 import com.example.app.utils.SimpleWatcher;
+import com.example.app.utils.ThumbnailPipeline;
+import com.example.app.utils.TileComposer;
+import com.example.core.CacheKeys;
+import com.example.core.Coordinates;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.List;
 import java.util.Locale;
 
 public class PixelsFragment extends Fragment {
 
+    private static final String BUDGET_NAME = "pixels-output";
     private LayoutPixelsBinding binding;
     private ColorStateList normalTint;
+    private final ExportMenu exportMenu = new ExportMenu(this);
+    @Nullable
+    private String shownKey;
+    private HistoryAdapter historyAdapter;
     private static final ColorStateList ERROR_TINT = ColorStateList.valueOf(Color.RED);
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater,
                              @Nullable ViewGroup container,
                              @Nullable Bundle savedInstanceState) {
-        binding = LayoutPixelsBinding.inflate(inflater, container, false);
+        View pre = MainActivity.takePreinflated(this, R.layout.layout_pixels);
+        binding = pre != null ? LayoutPixelsBinding.bind(pre) : LayoutPixelsBinding.inflate(inflater, container, false);
         return binding.getRoot();
     }
 
@@ -47,6 +64,11 @@ public class PixelsFragment extends Fragment {
                 com.google.android.material.R.color.design_default_color_background
         );
 
+        MemoryBudget.getInstance().register(BUDGET_NAME, MemoryBudget.PRIORITY_VISIBLE, () -> {
+            if (binding != null) binding.outputImage.setImageDrawable(null);
+            MemoryBudget.getInstance().release(BUDGET_NAME);
+        });
+
         binding.btnSendPixels.setEnabled(true);
         binding.btnSendPixels.setAlpha(0.5f);
 
@@ -57,6 +79,33 @@ public class PixelsFragment extends Fragment {
         binding.y2Val.addTextChangedListener(watcher);
 
         binding.btnSendPixels.setOnClickListener(this::onSendClicked);
+        binding.outputImage.setOnLongClickListener(v -> {
+            exportMenu.show(shownKey);
+            return true;
+        });
+
+        historyAdapter = new HistoryAdapter(this::restoreFromHistory);
+        binding.historyList.setAdapter(historyAdapter);
+        refreshHistory();
+    }
+
+    /** Historia jest czytana w wątku roboczym - pierwszy odczyt wczytuje plik. */
+    private void refreshHistory() {
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.VISIBLE_PLACEHOLDER, () -> {
+            List<HistoryStore.Entry> entries = HistoryStore.getInstance().entries("px:");
+            ResultDelivery.getInstance().deliver(this, () -> historyAdapter.setEntries(entries));
+        });
+    }
+
+    /**
+     * Przywraca wynik z historii tylko z cache, bez sieci. Wpis, którego obrazu
+     * ani kafli już tam nie ma, znika z historii; przywrócenie nie liczy się jako nowe użycie.
+     */
+    private void restoreFromHistory(HistoryStore.Entry entry) {
+        int[] c = CacheKeys.parsePixelKey(entry.key);
+        if (c == null) return;
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.INTERACTIVE, () ->
+                loadAndShow(entry.key, c[0], c[1], c[2], c[3], true));
     }
 
     private void updateButtonStyle() {
@@ -103,47 +152,60 @@ public class PixelsFragment extends Fragment {
         Integer y2 = parseNumber(binding.y2Val.getText().toString());
 
         boolean valid = true;
-        valid &= checkRange(binding.x1Val, x1, 0, 1000, "x1: 0–1000");
-        valid &= checkRange(binding.y1Val, y1, 0, 1000, "y1: 0–1000");
-        valid &= checkRange(binding.x2Val, x2, 0, 1000, "x2: 0–1000");
-        valid &= checkRange(binding.y2Val, y2, 0, 1000, "y2: 0–1000");
+        valid &= checkRange(binding.x1Val, Coordinates.isMapPixel(x1), "x1: 0–1000");
+        valid &= checkRange(binding.y1Val, Coordinates.isMapPixel(y1), "y1: 0–1000");
+        valid &= checkRange(binding.x2Val, Coordinates.isMapPixel(x2), "x2: 0–1000");
+        valid &= checkRange(binding.y2Val, Coordinates.isMapPixel(y2), "y2: 0–1000");
 
         if (!valid) return;
 
-        new Thread(() -> {
-            String msg = CityMapService
-                    .getInstance()
-                    .getFragmentOfMap(x1, y1, x2, y2);
+        String key = CacheKeys.pixelKey(x1, y1, x2, y2);
+        RequestScheduler.getInstance().submit(RequestScheduler.Priority.INTERACTIVE, () ->
+                loadAndShow(key, x1, y1, x2, y2, false));
 
-
-            requireActivity().runOnUiThread(() -> {
-                if (!msg.contains("ERROR")) {
-                    showOutputImage(msg);
-                }
-            });
-        }).start();
+        // Po zgłoszeniu żądania interaktywnego - prefetch czeka, aż ono się skończy.
+        SelectionPrefetcher.getInstance().recordSelection(x1, y1, x2, y2);
     }
 
-    private void showOutputImage(String msg) {
-
-        if (!msg.startsWith("ERROR")) {
-            try {
-                byte[] bytes = android.util.Base64.decode(msg, android.util.Base64.DEFAULT);
+    private void loadAndShow(String key, int x1, int y1, int x2, int y2, boolean cachedOnly) {
+        String msg;
+        Bitmap bitmap;
+        try {
+            bitmap = cachedOnly
+                    ? TileComposer.getInstance().loadCached(x1, y1, x2, y2)
+                    : TileComposer.getInstance().load(x1, y1, x2, y2);
+            msg = null;
+            // Przywrócenie z historii nie jest nowym zapytaniem - nie podbija licznika użyć.
+            if (!cachedOnly) {
+                HistoryStore.getInstance().record(key,
+                        String.format(Locale.US, "x1=%d, y1=%d → x2=%d, y2=%d", x1, y1, x2, y2));
+            }
+            ThumbnailPipeline.getInstance().submit(key, bitmap);
+        } catch (IOException e) {
+            bitmap = null;
+            msg = "ERROR: " + e.getMessage();
+            if (cachedOnly) HistoryStore.getInstance().remove(key);
+        }
 
-                android.graphics.Bitmap bitmap =
-                        android.graphics.BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        final Bitmap finalBitmap = bitmap;
+        final String finalMsg = msg;
+        ResultDelivery.getInstance().deliverImage(this, "output", finalBitmap,
+                () -> showOutputImage(key, finalBitmap, finalMsg));
+    }
 
-                binding.outputImage.setImageBitmap(bitmap);
+    private void showOutputImage(String key, @Nullable Bitmap bitmap, @Nullable String msg) {
 
-                clearAllFields();
+        if (bitmap != null) {
+            binding.outputImage.setImageBitmap(bitmap);
+            shownKey = key;
+            MemoryBudget.getInstance().update(BUDGET_NAME, bitmap.getAllocationByteCount());
 
-            } catch (Exception e) {
-                Toast.makeText(requireContext(),
-                        "Error decoding image", Toast.LENGTH_SHORT).show();
-            }
+            clearAllFields();
+            refreshHistory();
 
         } else {
 
+            refreshHistory();
             new MaterialAlertDialogBuilder(requireContext())
                     .setTitle("Error")
                     .setMessage(msg)
@@ -180,8 +242,8 @@ public class PixelsFragment extends Fragment {
         }
     }
 
-    private boolean checkRange(EditText field, Integer val, double min, double max, String msg) {
-        if (val == null || val < min || val > max) {
+    private boolean checkRange(EditText field, boolean inRange, String msg) {
+        if (!inRange) {
             field.setError(msg);
             field.setBackgroundTintList(ERROR_TINT);
             return false;
@@ -195,6 +257,7 @@ public class PixelsFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        MemoryBudget.getInstance().unregister(BUDGET_NAME);
         binding = null;
     }
 }
@@ -1,20 +1,47 @@
 package com.example.app;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.view.View;
 
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 
 public class RectOverlayView extends View {
 
+    /** Ile pikseli ekranu przypada na piksel mapy w lupie, względem skali podglądu (min. 1:1). */
+    private static final float LOUPE_MAGNIFICATION = 2f;
+
     private final Paint stroke = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint fill = new Paint(Paint.ANTI_ALIAS_FLAG);
     private RectF rect;
 
+    // Lupa - wszystko tworzone raz, onDraw tylko przestawia macierz i granice.
+    private final Paint loupePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint loupeRing = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint crosshair = new Paint();
+    private final Matrix viewToBitmap = new Matrix();
+    private final Matrix shaderMatrix = new Matrix();
+    private final float[] point = new float[2];
+    @Nullable
+    private final Drawable loupeIcon;
+    private final float loupeRadius;
+    private final float loupeOffset;
+    private final int iconSize;
+    @Nullable
+    private Bitmap loupeSource;
+    private float loupeZoom = LOUPE_MAGNIFICATION;
+    private boolean loupeVisible;
+    private float touchX, touchY;
+
     public RectOverlayView(Context c, @Nullable AttributeSet a) {
         super(c, a);
         stroke.setStyle(Paint.Style.STROKE);
@@ -22,6 +49,17 @@ public class RectOverlayView extends View {
         stroke.setColor(0xFF32A891);
         fill.setStyle(Paint.Style.FILL);
         fill.setColor(0x3332A891);
+
+        float density = getResources().getDisplayMetrics().density;
+        loupeRadius = 56 * density;
+        loupeOffset = 24 * density;
+        iconSize = Math.round(24 * density);
+        loupeRing.setStyle(Paint.Style.STROKE);
+        loupeRing.setStrokeWidth(3 * density);
+        loupeRing.setColor(0xFF32A891);
+        crosshair.setStrokeWidth(density);
+        crosshair.setColor(0xFFE53935);
+        loupeIcon = ContextCompat.getDrawable(c, R.drawable.loupe);
     }
 
     public void setRect(@Nullable RectF r) {
@@ -29,6 +67,40 @@ public class RectOverlayView extends View {
         invalidate();
     }
 
+    /**
+     * Obraz, z którego lupa pokazuje piksele, i macierz obrazu ImageView pod nakładką
+     * (bitmapa → widok). Wołać na początku gestu - macierz jest kopiowana, a shader
+     * tworzony tylko przy zmianie bitmapy.
+     */
+    public void setLoupeSource(@Nullable Bitmap source, @Nullable Matrix imageMatrix) {
+        if (source != loupeSource) {
+            loupeSource = source;
+            loupePaint.setShader(source == null ? null
+                    : new BitmapShader(source, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+        }
+        if (imageMatrix == null || !imageMatrix.invert(viewToBitmap)) {
+            viewToBitmap.reset();
+        }
+        // Skala podglądu (FIT_CENTER) - lupa powiększa względem niej, ale nigdy poniżej 1:1.
+        float shown = imageMatrix == null ? 1f : imageMatrix.mapRadius(1f);
+        loupeZoom = Math.max(1f, shown) * LOUPE_MAGNIFICATION;
+    }
+
+    /** Pokazuje lupę nad punktem dotyku (współrzędne widoku). */
+    public void showLoupe(float x, float y) {
+        if (loupeSource == null) return;
+        touchX = x;
+        touchY = y;
+        loupeVisible = true;
+        invalidate();
+    }
+
+    public void hideLoupe() {
+        if (!loupeVisible) return;
+        loupeVisible = false;
+        invalidate();
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
@@ -36,5 +108,36 @@ public class RectOverlayView extends View {
             canvas.drawRect(rect, fill);
             canvas.drawRect(rect, stroke);
         }
+        if (loupeVisible && loupeSource != null) {
+            drawLoupe(canvas);
+        }
+    }
+
+    private void drawLoupe(Canvas canvas) {
+        // Lupa nad palcem, żeby go nie zasłaniał; przy górnej krawędzi - pod palcem.
+        float cx = touchX;
+        float cy = touchY - loupeOffset - loupeRadius;
+        if (cy - loupeRadius < 0) cy = touchY + loupeOffset + loupeRadius;
+
+        point[0] = touchX;
+        point[1] = touchY;
+        viewToBitmap.mapPoints(point);
+
+        shaderMatrix.setScale(loupeZoom, loupeZoom);
+        shaderMatrix.postTranslate(cx - point[0] * loupeZoom, cy - point[1] * loupeZoom);
+        loupePaint.getShader().setLocalMatrix(shaderMatrix);
+
+        canvas.drawCircle(cx, cy, loupeRadius, loupePaint);
+        float arm = loupeRadius / 6;
+        canvas.drawLine(cx - arm, cy, cx + arm, cy, crosshair);
+        canvas.drawLine(cx, cy - arm, cx, cy + arm, crosshair);
+        canvas.drawCircle(cx, cy, loupeRadius, loupeRing);
+
+        if (loupeIcon != null) {
+            int right = Math.round(cx + loupeRadius);
+            int top = Math.round(cy - loupeRadius);
+            loupeIcon.setBounds(right - iconSize, top, right, top + iconSize);
+            loupeIcon.draw(canvas);
+        }
     }
-}
\ No newline at end of file
+}
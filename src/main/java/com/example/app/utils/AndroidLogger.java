@@ -0,0 +1,29 @@
+package com.example.app.utils;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.core.CoreLog;
+import com.example.core.Logger;
+
+/** Logi biblioteki core do logcat, łącznie z poziomem DEBUG. */
+public final class AndroidLogger implements Logger {
+
+    private static boolean installed;
+
+    /** Podpina logcat jako wyjście {@link CoreLog}; kolejne wywołania nic nie robią. */
+    public static synchronized void install() {
+        if (installed) return;
+        CoreLog.setLogger(new AndroidLogger());
+        installed = true;
+    }
+
+    private AndroidLogger() {
+    }
+
+    @Override
+    public void log(int level, String tag, String message, @Nullable Throwable error) {
+        Log.println(level, tag, error == null ? message : message + '\n' + Log.getStackTraceString(error));
+    }
+}
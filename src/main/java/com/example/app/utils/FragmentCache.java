@@ -0,0 +1,352 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.core.CacheKeys;
+import com.example.core.ImageBytes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cache pobranych fragmentów mapy (zdekodowane z base64 bajty PNG/JPEG).
+ * Ostatnio używane wpisy trzymane są w pamięci w ramach {@link MemoryBudget},
+ * wszystkie - w katalogu cache aplikacji.
+ */
+public class FragmentCache {
+
+    private static final String TAG = "FragmentCache";
+    private static final String BUDGET_NAME = "fragment-cache";
+    private static final String DIR_NAME = "fragments";
+
+    private static final long MEMORY_CAP_BYTES = 8L * 1024 * 1024;
+    private static final long DISK_CAP_BYTES = 64L * 1024 * 1024;
+
+    /** Pobiera base64 z serwisu; błędy zwraca jako tekst zaczynający się od "ERROR:". */
+    public interface Fetcher {
+        String fetch();
+    }
+
+    /** Liczniki skuteczności prefetchu. */
+    public static final class PrefetchStats {
+        public final int prefetched;
+        public final int hits;
+        public final long prefetchedBytes;
+        public final long wastedBytes;
+
+        PrefetchStats(int prefetched, int hits, long prefetchedBytes, long wastedBytes) {
+            this.prefetched = prefetched;
+            this.hits = hits;
+            this.prefetchedBytes = prefetchedBytes;
+            this.wastedBytes = wastedBytes;
+        }
+
+        public float hitRate() {
+            return prefetched == 0 ? 0f : (float) hits / prefetched;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "prefetched=%d hits=%d hitRate=%.2f bytes=%d wasted=%d",
+                    prefetched, hits, hitRate(), prefetchedBytes, wastedBytes);
+        }
+    }
+
+    private static FragmentCache instance;
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+
+    /** Wpisy pobrane przez prefetch, których użytkownik jeszcze nie obejrzał (klucz -> rozmiar). */
+    private final Map<String, Integer> unusedPrefetched = new HashMap<>();
+    private int prefetchedCount;
+    private int prefetchHits;
+    private long prefetchedBytes;
+    private long wastedBytes;
+
+    @Nullable
+    private Context appContext;
+    @Nullable
+    private File dir;
+
+    public static synchronized FragmentCache getInstance() {
+        if (instance == null) {
+            instance = new FragmentCache();
+        }
+        return instance;
+    }
+
+    private FragmentCache() {
+        MemoryBudget.getInstance().register(BUDGET_NAME, MemoryBudget.PRIORITY_CACHE, this::clearMemory);
+    }
+
+    /**
+     * Zapamiętuje kontekst aplikacji. Katalog na dysku jest tworzony dopiero przy
+     * pierwszym użyciu, zwykle w wątku roboczym; bez attach() cache działa tylko w pamięci.
+     */
+    public synchronized void attach(@NonNull Context context) {
+        if (appContext == null) appContext = context.getApplicationContext();
+    }
+
+    /** Katalog cache albo null bez attach() lub gdy nie da się go utworzyć. */
+    @Nullable
+    private synchronized File dir() {
+        if (dir == null && appContext != null) {
+            File d = new File(appContext.getCacheDir(), DIR_NAME);
+            if (!d.isDirectory() && !d.mkdirs()) {
+                Log.w(TAG, "Cannot create cache dir " + d);
+                return null;
+            }
+            dir = d;
+        }
+        return dir;
+    }
+
+    @Nullable
+    public byte[] get(@NonNull String key) {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = memory.get(key);
+            if (bytes != null) {
+                markUsedLocked(key);
+                return bytes;
+            }
+        }
+
+        bytes = readFile(key);
+        if (bytes == null) return null;
+
+        synchronized (this) {
+            markUsedLocked(key);
+            putMemoryLocked(key, bytes);
+        }
+        return bytes;
+    }
+
+    public boolean contains(@NonNull String key) {
+        synchronized (this) {
+            if (memory.containsKey(key)) return true;
+        }
+        File f = fileFor(key);
+        return f != null && f.isFile();
+    }
+
+    /** Plik z oryginalnymi bajtami wpisu albo null, jeśli nie ma go na dysku. */
+    @Nullable
+    public File getFile(@NonNull String key) {
+        File f = fileFor(key);
+        return (f != null && f.isFile()) ? f : null;
+    }
+
+    public void put(@NonNull String key, @NonNull byte[] bytes, boolean prefetched) {
+        synchronized (this) {
+            putMemoryLocked(key, bytes);
+            if (prefetched) {
+                unusedPrefetched.put(key, bytes.length);
+                prefetchedCount++;
+                prefetchedBytes += bytes.length;
+            }
+        }
+        writeFile(key, bytes);
+    }
+
+    /**
+     * Zwraca obraz z cache albo pobiera go przez {@code fetcher} i zapisuje.
+     *
+     * @throws IOException z komunikatem błędu serwisu lub dekodowania
+     */
+    @NonNull
+    public byte[] getOrFetch(@NonNull String key, @NonNull Fetcher fetcher) throws IOException {
+        byte[] cached = get(key);
+        if (cached != null) return cached;
+        return fetchAndPut(key, fetcher, false);
+    }
+
+    /**
+     * Pobiera obraz do cache z wyprzedzeniem, jeśli jeszcze go tam nie ma.
+     *
+     * @return liczba pobranych bajtów, 0 gdy wpis już był w cache
+     */
+    public int prefetch(@NonNull String key, @NonNull Fetcher fetcher) throws IOException {
+        if (contains(key)) return 0;
+        return fetchAndPut(key, fetcher, true).length;
+    }
+
+    private byte[] fetchAndPut(String key, Fetcher fetcher, boolean prefetched) throws IOException {
+        String base64 = fetcher.fetch();
+        if (base64 == null) {
+            throw new IOException("Service returned null");
+        }
+        if (base64.startsWith("ERROR:")) {
+            throw new IOException("Service error: " + base64);
+        }
+
+        byte[] bytes;
+        try {
+            bytes = ImageBytes.decode(base64);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Decode error: " + e.getMessage(), e);
+        }
+        if (bytes.length == 0) {
+            throw new IOException("Decoded data empty");
+        }
+
+        put(key, bytes, prefetched);
+        return bytes;
+    }
+
+    public synchronized PrefetchStats getPrefetchStats() {
+        return new PrefetchStats(prefetchedCount, prefetchHits, prefetchedBytes, wastedBytes);
+    }
+
+    /**
+     * Usuwa wszystkie wpisy z pamięci i z dysku, np. po zmianie mapy startowej.
+     * Razem z nimi znika historia zapytań i miniatury - pokazywałyby starą mapę.
+     */
+    public void invalidateAll() {
+        File d;
+        synchronized (this) {
+            unusedPrefetched.clear();
+            d = dir();
+        }
+        clearMemory();
+
+        HistoryStore.getInstance().clear();
+        ThumbnailPipeline.getInstance().clear();
+
+        File[] files = d == null ? null : d.listFiles((x, name) -> name.endsWith(".img"));
+        if (files == null) return;
+        for (File f : files) {
+            f.delete();
+        }
+    }
+
+    /** Zwalnia kopie w pamięci; pliki na dysku zostają. */
+    public synchronized void clearMemory() {
+        memory.clear();
+        memoryBytes = 0;
+        MemoryBudget.getInstance().release(BUDGET_NAME);
+    }
+
+    private void markUsedLocked(String key) {
+        if (unusedPrefetched.remove(key) != null) {
+            prefetchHits++;
+        }
+    }
+
+    private void putMemoryLocked(String key, byte[] bytes) {
+        byte[] old = memory.put(key, bytes);
+        if (old != null) memoryBytes -= old.length;
+        memoryBytes += bytes.length;
+
+        Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+        while (memoryBytes > MEMORY_CAP_BYTES && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            memoryBytes -= eldest.getValue().length;
+            it.remove();
+        }
+        MemoryBudget.getInstance().update(BUDGET_NAME, memoryBytes);
+    }
+
+    @Nullable
+    private File fileFor(String key) {
+        File d = dir();
+        return d == null ? null : new File(d, CacheKeys.hash(key) + ".img");
+    }
+
+    @Nullable
+    private byte[] readFile(String key) {
+        File f = fileFor(key);
+        if (f == null || !f.isFile()) return null;
+
+        byte[] bytes = new byte[(int) f.length()];
+        try (FileInputStream in = new FileInputStream(f)) {
+            int off = 0;
+            while (off < bytes.length) {
+                int n = in.read(bytes, off, bytes.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            if (off != bytes.length) return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read cache file " + f, e);
+            return null;
+        }
+        f.setLastModified(System.currentTimeMillis());
+        return bytes;
+    }
+
+    private void writeFile(String key, byte[] bytes) {
+        File f = fileFor(key);
+        if (f == null) return;
+
+        File tmp = new File(f.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write cache file " + f, e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            return;
+        }
+        trimDisk();
+    }
+
+    private void trimDisk() {
+        File d = dir();
+        File[] files = d == null ? null : d.listFiles((x, name) -> name.endsWith(".img"));
+        if (files == null) return;
+
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= DISK_CAP_BYTES) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (total <= DISK_CAP_BYTES) break;
+            total -= f.length();
+            onEvicted(f);
+            f.delete();
+        }
+    }
+
+    private void onEvicted(File f) {
+        String name = f.getName();
+        synchronized (this) {
+            countWastedLocked(name);
+        }
+        // Historia i miniatury nie mogą wskazywać wyniku, którego już nie ma.
+        String hash = name.substring(0, name.length() - ".img".length());
+        HistoryStore.getInstance().removeByFileHash(hash);
+        ThumbnailPipeline.getInstance().remove(hash);
+    }
+
+    private void countWastedLocked(String name) {
+        Iterator<Map.Entry<String, Integer>> it = unusedPrefetched.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> e = it.next();
+            if (name.equals(CacheKeys.hash(e.getKey()) + ".img")) {
+                wastedBytes += e.getValue();
+                it.remove();
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.app.utils;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.core.CacheKeys;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Zapis pobranych fragmentów bez dekodowania: oryginalne bajty PNG/JPEG z pliku
+ * {@link FragmentCache} są przepisywane kanałem ({@link FileChannel#transferTo})
+ * do MediaStore albo do miejsca wybranego przez użytkownika (SAF).
+ */
+public final class FragmentExporter {
+
+    private static final String TAG = "FragmentExporter";
+    private static final String ALBUM = "CityMap";
+
+    /** Wynik eksportu, wywoływany w wątku roboczym. */
+    public interface Callback {
+        void onExported(int exported, int failed);
+    }
+
+    private FragmentExporter() {
+    }
+
+    /** Zapisuje wpis z cache do galerii (Pictures/CityMap). */
+    @NonNull
+    public static Uri exportToGallery(@NonNull Context context, @NonNull String key) throws IOException {
+        File source = requireCached(key);
+        return exportFileToGallery(context, source, displayName(source));
+    }
+
+    /** Zapisuje wpis z cache pod adresem wskazanym przez użytkownika (ACTION_CREATE_DOCUMENT). */
+    public static void exportToUri(@NonNull Context context, @NonNull String key, @NonNull Uri target)
+            throws IOException {
+        copy(context.getContentResolver(), requireCached(key), target);
+    }
+
+    /**
+     * Proponowana nazwa pliku dla wpisu, z rozszerzeniem według sygnatury bajtów.
+     * Może pobrać dokładny prostokąt, jak zapis - wołać w wątku roboczym.
+     */
+    @NonNull
+    public static String suggestedName(@NonNull String key) throws IOException {
+        return displayName(requireCached(key));
+    }
+
+    /**
+     * Eksportuje w tle wszystkie fragmenty z historii zapytań, których bajty są w cache -
+     * do katalogu wybranego przez użytkownika (ACTION_OPEN_DOCUMENT_TREE) albo, gdy
+     * {@code treeUri} jest null, do galerii. Kafle siatki ({@link TileComposer}) nie są
+     * eksportowane; zaznaczenie pokazane z kafli jest pobierane w dokładnym prostokącie.
+     * Wywłaszczony eksport wznawia się od pierwszego niezapisanego fragmentu, a callback
+     * jest wołany raz, po przejściu wszystkich.
+     */
+    public static RequestScheduler.Ticket exportAllInBackground(@NonNull Context context,
+                                                               @Nullable Uri treeUri,
+                                                               @NonNull Callback callback) {
+        Context app = context.getApplicationContext();
+        // Stan przeżywa ponowienie zadania: fragmenty już przetworzone nie są zapisywane drugi raz.
+        Set<String> done = new HashSet<>();
+        int[] counts = new int[2];
+        return RequestScheduler.getInstance().submit(RequestScheduler.Priority.BATCH, () -> {
+            List<HistoryStore.Entry> entries = new ArrayList<>(HistoryStore.getInstance().entries("px:"));
+            entries.addAll(HistoryStore.getInstance().entries("geo:"));
+            for (HistoryStore.Entry entry : entries) {
+                if (done.contains(entry.key)) continue;
+                if (Thread.currentThread().isInterrupted()) {
+                    RequestScheduler.markAborted();
+                    return;
+                }
+                try {
+                    File f = requireCached(entry.key);
+                    if (treeUri == null) {
+                        exportFileToGallery(app, f, displayName(f));
+                    } else {
+                        exportFileToTree(app, f, treeUri);
+                    }
+                    counts[0]++;
+                } catch (IOException e) {
+                    // Np. ClosedByInterruptException z transferTo - częściowy plik jest już usunięty.
+                    if (Thread.currentThread().isInterrupted()) {
+                        RequestScheduler.markAborted();
+                        return;
+                    }
+                    Log.w(TAG, "Export of " + entry.key + " failed", e);
+                    counts[1]++;
+                }
+                done.add(entry.key);
+            }
+            Log.d(TAG, "Bulk export done: " + counts[0] + " exported, " + counts[1] + " failed");
+            callback.onExported(counts[0], counts[1]);
+        });
+    }
+
+    private static File requireCached(String key) throws IOException {
+        File source = FragmentCache.getInstance().getFile(key);
+        int[] px = CacheKeys.parsePixelKey(key);
+        if (source == null && px != null) {
+            // Zaznaczenie pokazane z kafli nie ma własnych bajtów - eksport pobiera dokładny prostokąt.
+            TileComposer.getInstance().fetchExact(px[0], px[1], px[2], px[3]);
+            source = FragmentCache.getInstance().getFile(key);
+        }
+        if (source == null) {
+            throw new IOException("Fragment not in cache: " + key);
+        }
+        return source;
+    }
+
+    private static Uri exportFileToGallery(Context context, File source, String name) throws IOException {
+        String mime = sniffMimeType(source);
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            // Bez scoped storage zapis do wspólnych katalogów wymaga uprawnień - używamy katalogu aplikacji.
+            File dir = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            if (dir == null || (!dir.isDirectory() && !dir.mkdirs())) {
+                throw new IOException("External storage not available");
+            }
+            File target = new File(dir, name);
+            try (FileChannel in = new FileInputStream(source).getChannel();
+                 FileChannel out = new FileOutputStream(target).getChannel()) {
+                transfer(in, out);
+            } catch (IOException e) {
+                target.delete();
+                throw e;
+            }
+            return Uri.fromFile(target);
+        }
+
+        ContentResolver resolver = context.getContentResolver();
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, name);
+        values.put(MediaStore.Images.Media.MIME_TYPE, mime);
+        values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/" + ALBUM);
+        values.put(MediaStore.Images.Media.IS_PENDING, 1);
+
+        Uri uri = resolver.insert(MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY), values);
+        if (uri == null) {
+            throw new IOException("MediaStore insert failed");
+        }
+        try {
+            copy(resolver, source, uri);
+        } catch (IOException e) {
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+
+        values.clear();
+        values.put(MediaStore.Images.Media.IS_PENDING, 0);
+        resolver.update(uri, values, null, null);
+        return uri;
+    }
+
+    private static void exportFileToTree(Context context, File source, Uri treeUri) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        Uri dir = DocumentsContract.buildDocumentUriUsingTree(treeUri,
+                DocumentsContract.getTreeDocumentId(treeUri));
+        Uri target = DocumentsContract.createDocument(resolver, dir, sniffMimeType(source), displayName(source));
+        if (target == null) {
+            throw new IOException("Cannot create document in " + treeUri);
+        }
+        try {
+            copy(resolver, source, target);
+        } catch (IOException e) {
+            // Niedokończony dokument nie może zostać w katalogu użytkownika.
+            try {
+                DocumentsContract.deleteDocument(resolver, target);
+            } catch (Exception deleteError) {
+                Log.w(TAG, "Cannot delete partial " + target, deleteError);
+            }
+            throw e;
+        }
+    }
+
+    private static void copy(ContentResolver resolver, File source, Uri target) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(target, "w")) {
+            if (pfd == null) {
+                throw new IOException("Cannot open " + target);
+            }
+            try (FileChannel in = new FileInputStream(source).getChannel();
+                 FileChannel out = new FileOutputStream(pfd.getFileDescriptor()).getChannel()) {
+                transfer(in, out);
+            }
+        }
+    }
+
+    private static void transfer(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        long pos = 0;
+        while (pos < size) {
+            long n = in.transferTo(pos, size - pos, out);
+            if (n <= 0) break;
+            pos += n;
+        }
+        if (pos != size) {
+            throw new IOException("Short transfer: " + pos + " of " + size + " bytes");
+        }
+    }
+
+    /** Rozpoznaje format po sygnaturze pliku, bez dekodowania obrazu. */
+    private static String sniffMimeType(File f) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(4);
+        try (FileChannel ch = new FileInputStream(f).getChannel()) {
+            ch.read(head, 0);
+        }
+        if (head.position() >= 2 && (head.get(0) & 0xFF) == 0xFF && (head.get(1) & 0xFF) == 0xD8) {
+            return "image/jpeg";
+        }
+        if (head.position() >= 4 && (head.get(0) & 0xFF) == 0x89 && head.get(1) == 'P'
+                && head.get(2) == 'N' && head.get(3) == 'G') {
+            return "image/png";
+        }
+        return "application/octet-stream";
+    }
+
+    private static String displayName(File source) throws IOException {
+        String base = "citymap_" + source.getName().substring(0, 12);
+        switch (sniffMimeType(source)) {
+            case "image/jpeg": return base + ".jpg";
+            case "image/png": return base + ".png";
+            default: return base + ".img";
+        }
+    }
+}
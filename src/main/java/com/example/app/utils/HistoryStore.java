@@ -0,0 +1,172 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.core.CacheKeys;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Historia ostatnich zapytań, których wyniki leżą w {@link FragmentCache}.
+ * Wpis to klucz cache, etykieta zapytania i czas; lista jest trzymana w pliku
+ * w katalogu aplikacji, od najnowszych.
+ */
+public class HistoryStore {
+
+    private static final String TAG = "HistoryStore";
+    private static final String FILE_NAME = "history.tsv";
+    private static final int MAX_ENTRIES = 50;
+
+    public static final class Entry {
+        public final String key;
+        public final String label;
+        public final long timestamp;
+        /** Ile razy zapytanie zostało wykonane, odkąd jest w historii. */
+        public final int uses;
+
+        Entry(String key, String label, long timestamp, int uses) {
+            this.key = key;
+            this.label = label;
+            this.timestamp = timestamp;
+            this.uses = uses;
+        }
+    }
+
+    private static HistoryStore instance;
+
+    private final LinkedList<Entry> entries = new LinkedList<>();
+    @Nullable
+    private Context appContext;
+    @Nullable
+    private File file;
+
+    public static synchronized HistoryStore getInstance() {
+        if (instance == null) {
+            instance = new HistoryStore();
+        }
+        return instance;
+    }
+
+    /** Zapamiętuje kontekst; plik historii jest wczytywany przy pierwszym użyciu, nie w onCreate. */
+    public synchronized void attach(@NonNull Context context) {
+        if (appContext == null) appContext = context.getApplicationContext();
+    }
+
+    private void ensureLoadedLocked() {
+        if (file != null || appContext == null) return;
+        file = new File(appContext.getFilesDir(), FILE_NAME);
+        load();
+    }
+
+    /** Dodaje wpis na początek; powtórzone zapytanie przesuwa się na górę i zwiększa licznik użyć. */
+    public synchronized void record(@NonNull String key, @NonNull String label) {
+        ensureLoadedLocked();
+        int uses = 1;
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.key.equals(key)) {
+                uses += e.uses;
+                it.remove();
+            }
+        }
+        entries.addFirst(new Entry(key, label, System.currentTimeMillis(), uses));
+        while (entries.size() > MAX_ENTRIES) entries.removeLast();
+        save();
+    }
+
+    /** Usuwa wpis o podanym kluczu, np. gdy jego wyniku nie ma już w cache. */
+    public synchronized void remove(@NonNull String key) {
+        ensureLoadedLocked();
+        if (entries.removeIf(e -> e.key.equals(key))) save();
+    }
+
+    /**
+     * Usuwa wpisy, których wynik leżał w pliku cache o nazwie {@code fileHash}
+     * ({@link CacheKeys#hash} klucza) - wołane, gdy {@link FragmentCache} usuwa plik.
+     */
+    public synchronized void removeByFileHash(@NonNull String fileHash) {
+        ensureLoadedLocked();
+        if (entries.removeIf(e -> fileHash.equals(CacheKeys.hash(e.key)))) save();
+    }
+
+    /** Usuwa całą historię, np. gdy wyniki w cache przestały być aktualne. */
+    public synchronized void clear() {
+        ensureLoadedLocked();
+        if (entries.isEmpty()) return;
+        entries.clear();
+        save();
+    }
+
+    /** Wpisy, których klucz zaczyna się od {@code keyPrefix} (np. "px:" lub "geo:"). */
+    @NonNull
+    public synchronized List<Entry> entries(@NonNull String keyPrefix) {
+        ensureLoadedLocked();
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : entries) {
+            if (e.key.startsWith(keyPrefix)) out.add(e);
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    /** Najczęściej używane wpisy (przy remisie nowsze), najwyżej {@code limit}. */
+    @NonNull
+    public synchronized List<Entry> mostUsed(int limit) {
+        ensureLoadedLocked();
+        List<Entry> out = new ArrayList<>(entries);
+        out.sort((a, b) -> a.uses != b.uses
+                ? Integer.compare(b.uses, a.uses) : Long.compare(b.timestamp, a.timestamp));
+        return Collections.unmodifiableList(out.subList(0, Math.min(limit, out.size())));
+    }
+
+    private void load() {
+        if (file == null || !file.isFile()) return;
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                // timestamp, uses, klucz, etykieta; starsze pliki nie mają licznika.
+                String[] parts = line.split("\t", 4);
+                try {
+                    if (parts.length == 4) {
+                        entries.add(new Entry(parts[2], parts[3], Long.parseLong(parts[0]),
+                                Integer.parseInt(parts[1])));
+                    } else if (parts.length == 3) {
+                        entries.add(new Entry(parts[1], parts[2], Long.parseLong(parts[0]), 1));
+                    }
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read history", e);
+        }
+    }
+
+    private void save() {
+        if (file == null) return;
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (Entry e : entries) {
+                w.write(e.timestamp + "\t" + e.uses + "\t" + e.key + "\t" + e.label.replace('\t', ' ').replace('\n', ' ') + "\n");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write history", e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.core.CacheKeys;
+import com.example.core.ImageBytes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Mapa startowa trzymana na dysku razem z ETagiem i skrótem SHA-256 treści.
+ * Odświeżenie wysyła If-None-Match, więc niezmieniona mapa kosztuje samą
+ * odpowiedź 304/412. Gdy treść mapy się zmieni, {@link FragmentCache} jest czyszczony
+ * razem z historią i miniaturami, bo wycięte wcześniej fragmenty pochodzą ze starej mapy.
+ */
+public class InitialMapCache {
+
+    private static final String TAG = "InitialMapCache";
+    private static final String IMAGE_FILE = "initial_map.img";
+    private static final String META_FILE = "initial_map.meta";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_HASH = "sha256";
+
+    private static InitialMapCache instance;
+
+    /** Podgląd mapy i rozgrzewanie cache mogą wołać {@link #load()} jednocześnie. */
+    private final Object loadLock = new Object();
+
+    @Nullable
+    private Context appContext;
+    @Nullable
+    private File dir;
+    @Nullable
+    private String contentHash;
+
+    public static synchronized InitialMapCache getInstance() {
+        if (instance == null) {
+            instance = new InitialMapCache();
+        }
+        return instance;
+    }
+
+    /** Zapamiętuje kontekst; katalog cache jest pobierany przy pierwszym użyciu, w wątku roboczym. */
+    public synchronized void attach(@NonNull Context context) {
+        if (appContext == null) appContext = context.getApplicationContext();
+    }
+
+    /** Skrót SHA-256 ostatnio wczytanej mapy albo null, jeśli jeszcze jej nie ma. */
+    @Nullable
+    public synchronized String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Zwraca aktualną mapę startową (PNG/JPEG). Mapa z cache jest zwracana bez
+     * pobierania treści, jeśli serwer potwierdzi ETag, oraz gdy serwis jest niedostępny.
+     *
+     * @throws IOException z komunikatem błędu, gdy nie ma ani sieci, ani kopii w cache
+     */
+    @NonNull
+    public byte[] load() throws IOException {
+        synchronized (loadLock) {
+            return loadLocked();
+        }
+    }
+
+    private byte[] loadLocked() throws IOException {
+        Properties meta = readMeta();
+        byte[] cached = meta == null ? null : readImage();
+        String etag = cached == null ? null : meta.getProperty(KEY_ETAG);
+        String cachedHash = cached == null ? null : meta.getProperty(KEY_HASH);
+
+        CityMapService.InitialMapResult result = CityMapService.getInstance().fetchInitialMap(etag);
+
+        if (result.notModified && cached != null) {
+            Log.d(TAG, "Initial map not modified, reusing " + cached.length + " cached bytes");
+            setContentHash(cachedHash);
+            return cached;
+        }
+
+        String base64 = result.base64;
+        if (base64 == null || base64.startsWith("ERROR:")) {
+            String msg = base64 == null ? "GetInitialMap returned null" : "GetInitialMap error: " + base64;
+            if (cached != null) {
+                Log.w(TAG, msg + ", falling back to cached map");
+                setContentHash(cachedHash);
+                return cached;
+            }
+            throw new IOException(msg);
+        }
+
+        byte[] bytes;
+        try {
+            bytes = ImageBytes.decode(base64);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Decode error: " + e.getMessage(), e);
+        }
+        if (bytes.length == 0) {
+            throw new IOException("Decoded data empty");
+        }
+
+        String hash = CacheKeys.sha256Hex(bytes);
+        if (cachedHash != null && !cachedHash.equals(hash)) {
+            Log.i(TAG, "Initial map content changed, invalidating fragment cache");
+            FragmentCache.getInstance().invalidateAll();
+        }
+
+        write(bytes, result.etag, hash);
+        setContentHash(hash);
+        return bytes;
+    }
+
+    private synchronized void setContentHash(@Nullable String hash) {
+        contentHash = hash;
+    }
+
+    @Nullable
+    private synchronized File file(String name) {
+        if (dir == null && appContext != null) dir = appContext.getCacheDir();
+        return dir == null ? null : new File(dir, name);
+    }
+
+    @Nullable
+    private Properties readMeta() {
+        File f = file(META_FILE);
+        if (f == null || !f.isFile()) return null;
+
+        Properties p = new Properties();
+        try (FileInputStream in = new FileInputStream(f)) {
+            p.load(in);
+            return p;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + f, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private byte[] readImage() {
+        File f = file(IMAGE_FILE);
+        if (f == null || !f.isFile()) return null;
+
+        byte[] bytes = new byte[(int) f.length()];
+        try (FileInputStream in = new FileInputStream(f)) {
+            int off = 0;
+            while (off < bytes.length) {
+                int n = in.read(bytes, off, bytes.length - off);
+                if (n < 0) return null;
+                off += n;
+            }
+            return bytes;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + f, e);
+            return null;
+        }
+    }
+
+    private void write(byte[] bytes, @Nullable String etag, String hash) {
+        File image = file(IMAGE_FILE);
+        File meta = file(META_FILE);
+        if (image == null || meta == null) return;
+
+        Properties p = new Properties();
+        p.setProperty(KEY_HASH, hash);
+        if (etag != null) p.setProperty(KEY_ETAG, etag);
+
+        // Oba pliki powstają jako .tmp i są podmieniane zmianą nazwy, jak w FragmentCache.
+        // Meta znika przed podmianą obrazu - przerwany zapis nie zostanie uznany za aktualny.
+        File imageTmp = new File(image.getPath() + ".tmp");
+        File metaTmp = new File(meta.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(imageTmp)) {
+                out.write(bytes);
+            }
+            try (FileOutputStream out = new FileOutputStream(metaTmp)) {
+                p.store(out, null);
+            }
+            meta.delete();
+            if (!imageTmp.renameTo(image) || !metaTmp.renameTo(meta)) {
+                throw new IOException("Cannot rename " + imageTmp + " / " + metaTmp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot store initial map", e);
+            meta.delete();
+            imageTmp.delete();
+            metaTmp.delete();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.app.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.core.SoapTransport;
+
+import org.ksoap2.HeaderProperty;
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.serialization.PropertyInfo;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+import org.ksoap2.transport.HttpResponseException;
+import org.ksoap2.transport.HttpTransportSE;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dotychczasowy transport przez ksoap2 (SoapObject + SoapSerializationEnvelope).
+ * Wolniejszy i alokuje pełne zrzuty żądania i odpowiedzi, ale zostaje jako
+ * zapasowy na wypadek, gdyby serwis nie przyjął koperty z {@link com.example.core.RawSoapTransport}.
+ */
+public class KsoapTransport implements SoapTransport {
+
+    private static final String TAG = "KsoapTransport";
+    private static final String BUDGET_NAME = "soap-dumps";
+    /** Rezerwacja na zrzuty przed pierwszym wywołaniem, zanim znany jest ich rozmiar. */
+    private static final long INITIAL_DUMP_ESTIMATE = 512L * 1024;
+
+    private final String url;
+    private final int timeoutMs;
+
+    /** Suma rozmiarów zrzutów ksoap2 (requestDump/responseDump) trzymanych w trakcie wywołań. */
+    private final AtomicLong dumpBytes = new AtomicLong();
+    /** Rozmiar zrzutów z ostatniego wywołania - rezerwacja dla następnego. */
+    private final AtomicLong lastDumpSize = new AtomicLong(INITIAL_DUMP_ESTIMATE);
+
+    public KsoapTransport(String url, int timeoutMs) {
+        this.url = url;
+        this.timeoutMs = timeoutMs;
+        // Zrzuty żyją tylko do końca wywołania, więc nie ma czego zwalniać wcześniej.
+        MemoryBudget.getInstance().register(BUDGET_NAME, MemoryBudget.PRIORITY_TRANSIENT, () -> { });
+    }
+
+    @NonNull
+    @Override
+    public Response call(@NonNull Operation op, @NonNull String[] values, @Nullable String ifNoneMatch)
+            throws IOException {
+        HttpTransportSE http = new HttpTransportSE(url, timeoutMs);
+        http.debug = true;
+        // Rezerwacja przed wywołaniem: budżet może zwolnić innych konsumentów,
+        // zanim ksoap2 zaalokuje zrzuty żądania i odpowiedzi.
+        long tracked = trackDump(lastDumpSize.get());
+
+        try {
+            SoapObject request = new SoapObject(op.namespace, op.name);
+            for (int i = 0; i < op.params.length; i++) {
+                request.addProperty(makeProp(op.namespace, op.params[i], values[i]));
+            }
+
+            SoapSerializationEnvelope envelope =
+                    new SoapSerializationEnvelope(SoapEnvelope.VER11);
+
+            envelope.dotNet = false;
+            envelope.implicitTypes = true;
+            envelope.setAddAdornments(false);
+            envelope.setOutputSoapObject(request);
+
+            List<HeaderProperty> requestHeaders = new ArrayList<>();
+            if (ifNoneMatch != null) {
+                requestHeaders.add(new HeaderProperty("If-None-Match", ifNoneMatch));
+            }
+
+            List<?> responseHeaders = http.call(null, envelope, requestHeaders);
+            String etag = findHeader(responseHeaders, "ETag");
+
+            String xml = http.responseDump;
+            tracked = retrackDump(tracked, dumpSize(http));
+            Log.d(TAG, "RESPONSE (" + op.name + "):\n" + xml);
+
+            String startTag = "<ImageInBase64>";
+            String endTag = "</ImageInBase64>";
+
+            int start = xml.indexOf(startTag);
+            int end = xml.indexOf(endTag);
+
+            if (start == -1 || end == -1 || end <= start) {
+                throw new FormatException("tag ImageInBase64 not found");
+            }
+
+            return new Response(false, etag, xml.substring(start + startTag.length(), end).trim());
+
+        } catch (HttpResponseException e) {
+            // Warunkowy POST: niezmieniony zasób to 412 (RFC 7232), starsze serwery zwracają 304.
+            if (e.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED
+                    || (ifNoneMatch != null && e.getStatusCode() == HttpURLConnection.HTTP_PRECON_FAILED)) {
+                return new Response(true, ifNoneMatch, null);
+            }
+            throw e;
+        } catch (XmlPullParserException e) {
+            Log.d(TAG, "REQUEST DUMP:\n" + http.requestDump);
+            Log.d(TAG, "RESPONSE DUMP:\n" + http.responseDump);
+            throw new FormatException("Malformed response: " + e.getMessage(), e);
+        } finally {
+            untrackDump(tracked);
+        }
+    }
+
+    private static PropertyInfo makeProp(String namespace, String name, String value) {
+        PropertyInfo pi = new PropertyInfo();
+        pi.setName(name);
+        pi.setNamespace(namespace);
+        pi.setValue(value);
+        pi.setType(String.class);
+        return pi;
+    }
+
+    @Nullable
+    private static String findHeader(@Nullable List<?> headers, String name) {
+        if (headers == null) return null;
+        for (Object o : headers) {
+            if (o instanceof HeaderProperty) {
+                HeaderProperty h = (HeaderProperty) o;
+                if (name.equalsIgnoreCase(h.getKey())) return h.getValue();
+            }
+        }
+        return null;
+    }
+
+    private long trackDump(long bytes) {
+        MemoryBudget.getInstance().update(BUDGET_NAME, dumpBytes.addAndGet(bytes));
+        return bytes;
+    }
+
+    /** Zamienia rezerwację na faktyczny rozmiar zrzutów i zapamiętuje go dla następnych wywołań. */
+    private long retrackDump(long reserved, long actual) {
+        lastDumpSize.set(Math.max(actual, 1));
+        MemoryBudget.getInstance().update(BUDGET_NAME, dumpBytes.addAndGet(actual - reserved));
+        return actual;
+    }
+
+    private static long dumpSize(HttpTransportSE http) {
+        long chars = (http.requestDump == null ? 0 : http.requestDump.length())
+                + (http.responseDump == null ? 0 : http.responseDump.length());
+        return chars * 2L;
+    }
+
+    private void untrackDump(long bytes) {
+        MemoryBudget.getInstance().update(BUDGET_NAME, dumpBytes.addAndGet(-bytes));
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ksoap2";
+    }
+}
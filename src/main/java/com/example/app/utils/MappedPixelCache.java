@@ -0,0 +1,166 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Zdekodowane piksele mapy startowej w pliku, odczytywane przez mmap prosto do
+ * Bitmapy ({@link Bitmap#copyPixelsFromBuffer}) - ponowne otwarcie podglądu nie
+ * dekoduje PNG/JPEG. Plik jest ważny tylko dla skrótu treści z {@link InitialMapCache}.
+ */
+public class MappedPixelCache {
+
+    private static final String TAG = "MappedPixelCache";
+    private static final String FILE_NAME = "initial_map.pixels";
+
+    /** Nagłówek: magic, szerokość, wysokość, format pikseli, skrót SHA-256 (hex). */
+    private static final int MAGIC = 0x50584331; // "PXC1"
+    private static final int HASH_LENGTH = 64;
+    private static final int HEADER_SIZE = 4 * 4 + HASH_LENGTH;
+    private static final int CONFIG_RGB_565 = 0;
+    private static final int CONFIG_ARGB_8888 = 1;
+
+    private static MappedPixelCache instance;
+
+    /** Chroni plik tymczasowy; {@link #get} nie czeka na zapis kilku MB pikseli. */
+    private final Object writeLock = new Object();
+
+    @Nullable
+    private Context appContext;
+    @Nullable
+    private File file;
+
+    public static synchronized MappedPixelCache getInstance() {
+        if (instance == null) {
+            instance = new MappedPixelCache();
+        }
+        return instance;
+    }
+
+    /** Zapamiętuje kontekst; ścieżka pliku jest ustalana przy pierwszym użyciu, w wątku roboczym. */
+    public synchronized void attach(@NonNull Context context) {
+        if (appContext == null) appContext = context.getApplicationContext();
+    }
+
+    @Nullable
+    private synchronized File file() {
+        if (file == null && appContext != null) {
+            file = new File(appContext.getCacheDir(), FILE_NAME);
+        }
+        return file;
+    }
+
+    /** Bitmapa dla podanego skrótu treści albo null; plik z innym skrótem jest usuwany. */
+    @Nullable
+    public synchronized Bitmap get(@NonNull String contentHash) {
+        File file = file();
+        if (file == null || !file.isFile()) return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel ch = raf.getChannel()) {
+            long size = ch.size();
+            if (size < HEADER_SIZE) {
+                return invalidate("truncated");
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC) return invalidate("bad magic");
+
+            int width = buf.getInt();
+            int height = buf.getInt();
+            int configCode = buf.getInt();
+            byte[] hash = new byte[HASH_LENGTH];
+            buf.get(hash);
+            if (!contentHash.equals(new String(hash, StandardCharsets.US_ASCII))) {
+                return invalidate("content hash changed");
+            }
+
+            Bitmap.Config config = configCode == CONFIG_ARGB_8888 ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+            int bpp = config == Bitmap.Config.ARGB_8888 ? 4 : 2;
+            if (width <= 0 || height <= 0 || size - HEADER_SIZE != (long) width * height * bpp) {
+                return invalidate("size mismatch");
+            }
+
+            Bitmap bmp = Bitmap.createBitmap(width, height, config);
+            bmp.copyPixelsFromBuffer(buf);
+            return bmp;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Cannot map " + file, e);
+            return invalidate("read error");
+        }
+    }
+
+    /**
+     * Zapisuje piksele bitmapy pod skrótem treści; wołać w wątku roboczym. Bitmapa
+     * nie może zostać zwolniona przez recycle(), dopóki zapis trwa.
+     */
+    public void put(@NonNull String contentHash, @NonNull Bitmap bmp) {
+        File target = file();
+        if (target == null || bmp.isRecycled() || contentHash.length() != HASH_LENGTH) return;
+
+        int configCode;
+        if (bmp.getConfig() == Bitmap.Config.RGB_565) {
+            configCode = CONFIG_RGB_565;
+        } else if (bmp.getConfig() == Bitmap.Config.ARGB_8888) {
+            configCode = CONFIG_ARGB_8888;
+        } else {
+            return;
+        }
+
+        // Zapis do pliku tymczasowego i zamiana nazwy - przerwany zapis nie zostanie odczytany.
+        // Blokada instancji obejmuje tylko zamianę nazwy, więc get() nie czeka na zapis.
+        synchronized (writeLock) {
+            File tmp = new File(target.getPath() + ".tmp");
+            long size = HEADER_SIZE + (long) bmp.getByteCount();
+            if (!writeTmp(tmp, size, contentHash, bmp, configCode)) return;
+
+            synchronized (this) {
+                if (!tmp.renameTo(target)) {
+                    Log.w(TAG, "Cannot rename " + tmp);
+                    tmp.delete();
+                    return;
+                }
+            }
+            Log.d(TAG, "Stored " + bmp.getWidth() + "x" + bmp.getHeight() + " pixels (" + size + " B)");
+        }
+    }
+
+    private static boolean writeTmp(File tmp, long size, String contentHash, Bitmap bmp, int configCode) {
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+             FileChannel ch = raf.getChannel()) {
+            raf.setLength(size);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.putInt(MAGIC)
+                    .putInt(bmp.getWidth())
+                    .putInt(bmp.getHeight())
+                    .putInt(configCode)
+                    .put(contentHash.getBytes(StandardCharsets.US_ASCII));
+            ByteBuffer pixels = buf.slice();
+            // Bez force(): przed niedokończonym plikiem chroni zamiana nazwy, a to tylko cache.
+            bmp.copyPixelsToBuffer(pixels);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Cannot write " + tmp, e);
+            tmp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    private Bitmap invalidate(String reason) {
+        Log.d(TAG, "Dropping pixel cache: " + reason);
+        if (file != null) file.delete();
+        return null;
+    }
+}
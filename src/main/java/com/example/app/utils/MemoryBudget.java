@@ -0,0 +1,229 @@
+package com.example.app.utils;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wspólny budżet pamięci dla wszystkich obiektów trzymających obrazy i bufory.
+ * Limit liczony jest z {@link ActivityManager#getMemoryClass()}, a przy
+ * przekroczeniu lub sygnale onTrimMemory/onLowMemory zwalniane są kolejno
+ * konsumenci o najniższym priorytecie.
+ */
+public class MemoryBudget implements ComponentCallbacks2 {
+
+    private static final String TAG = "MemoryBudget";
+
+    /** Dane, które zawsze da się odtworzyć (cache, bufory pomocnicze). */
+    public static final int PRIORITY_CACHE = 0;
+    /** Dane przejściowe, np. zrzuty odpowiedzi SOAP w trakcie parsowania. */
+    public static final int PRIORITY_TRANSIENT = 1;
+    /** Obraz aktualnie pokazywany użytkownikowi. */
+    public static final int PRIORITY_VISIBLE = 2;
+
+    /** Jaka część memoryClass może zostać zajęta przez obrazy i bufory. */
+    private static final int BUDGET_DIVISOR = 3;
+    private static final long FALLBACK_CAP_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Konsument budżetu - zwalnia swoje dane na żądanie (zawsze w wątku UI)
+     * i sam zgłasza nowe zużycie przez {@link #update} lub {@link #release(String)}.
+     */
+    public interface Releasable {
+        void release();
+    }
+
+    private static final class Consumer {
+        final String name;
+        final int priority;
+        final Releasable releasable;
+        long bytes;
+
+        Consumer(String name, int priority, Releasable releasable) {
+            this.name = name;
+            this.priority = priority;
+            this.releasable = releasable;
+        }
+    }
+
+    private static MemoryBudget instance;
+
+    private final Map<String, Consumer> consumers = new LinkedHashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private long capBytes = FALLBACK_CAP_BYTES;
+    private boolean attached = false;
+
+    public static synchronized MemoryBudget getInstance() {
+        if (instance == null) {
+            instance = new MemoryBudget();
+        }
+        return instance;
+    }
+
+    /**
+     * Wylicza limit na podstawie klasy pamięci urządzenia i podpina się pod
+     * callbacki onTrimMemory/onLowMemory aplikacji. Wywołanie wielokrotne jest bezpieczne.
+     */
+    public void attach(@NonNull Context context) {
+        Context app = context.getApplicationContext();
+        synchronized (this) {
+            if (attached) return;
+            attached = true;
+
+            ActivityManager am = (ActivityManager) app.getSystemService(Context.ACTIVITY_SERVICE);
+            if (am != null) {
+                capBytes = (long) am.getMemoryClass() * 1024 * 1024 / BUDGET_DIVISOR;
+            }
+        }
+        app.registerComponentCallbacks(this);
+        Log.d(TAG, "Memory budget cap = " + (capBytes / 1024) + " KB");
+    }
+
+    public synchronized void register(@NonNull String name, int priority, @NonNull Releasable releasable) {
+        consumers.put(name, new Consumer(name, priority, releasable));
+    }
+
+    public synchronized void unregister(@NonNull String name) {
+        consumers.remove(name);
+    }
+
+    /**
+     * Aktualizuje zużycie konsumenta. Jeśli suma przekroczy limit, zwalniani są
+     * inni konsumenci, zaczynając od najniższego priorytetu.
+     */
+    public void update(@NonNull String name, long bytes) {
+        List<Consumer> toShed;
+        synchronized (this) {
+            Consumer c = consumers.get(name);
+            if (c == null) {
+                Log.w(TAG, "update for unregistered consumer " + name);
+                return;
+            }
+            c.bytes = Math.max(0, bytes);
+
+            long total = totalBytesLocked();
+            if (total <= capBytes) return;
+
+            Log.w(TAG, "Budget exceeded: " + (total / 1024) + " KB > " + (capBytes / 1024) + " KB");
+            toShed = pickVictimsLocked(total - capBytes, c.priority, name);
+        }
+        shed(toShed);
+    }
+
+    public void release(@NonNull String name) {
+        update(name, 0);
+    }
+
+    public synchronized long getCapBytes() {
+        return capBytes;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytesLocked();
+    }
+
+    /** Bieżące zużycie w bajtach dla każdego zarejestrowanego konsumenta. */
+    public synchronized Map<String, Long> getUsage() {
+        Map<String, Long> usage = new LinkedHashMap<>();
+        for (Consumer c : consumers.values()) {
+            usage.put(c.name, c.bytes);
+        }
+        return Collections.unmodifiableMap(usage);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int maxPriority;
+        // RUNNING_CRITICAL (proces na pierwszym planie, system zaraz zacznie zabijać inne)
+        // jest pilniejszy niż MODERATE, choć ma niższą wartość liczbową.
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            maxPriority = PRIORITY_VISIBLE;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            maxPriority = PRIORITY_TRANSIENT;
+        } else {
+            maxPriority = PRIORITY_CACHE;
+        }
+        Log.d(TAG, "onTrimMemory level=" + level + ", shedding up to priority " + maxPriority);
+        shedUpTo(maxPriority);
+    }
+
+    @Override
+    public void onLowMemory() {
+        Log.w(TAG, "onLowMemory, shedding everything");
+        shedUpTo(PRIORITY_VISIBLE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    private void shedUpTo(int maxPriority) {
+        List<Consumer> toShed = new ArrayList<>();
+        synchronized (this) {
+            for (Consumer c : sortedByPriorityLocked()) {
+                if (c.priority <= maxPriority && c.bytes > 0) {
+                    toShed.add(c);
+                }
+            }
+        }
+        shed(toShed);
+    }
+
+    private List<Consumer> pickVictimsLocked(long overBy, int requesterPriority, String requester) {
+        List<Consumer> victims = new ArrayList<>();
+        long freed = 0;
+        for (Consumer c : sortedByPriorityLocked()) {
+            if (freed >= overBy) break;
+            if (c.name.equals(requester) || c.bytes == 0) continue;
+            if (c.priority > requesterPriority) break;
+            victims.add(c);
+            freed += c.bytes;
+        }
+        return victims;
+    }
+
+    private List<Consumer> sortedByPriorityLocked() {
+        List<Consumer> sorted = new ArrayList<>(consumers.values());
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.priority, b.priority));
+        return sorted;
+    }
+
+    private long totalBytesLocked() {
+        long total = 0;
+        for (Consumer c : consumers.values()) {
+            total += c.bytes;
+        }
+        return total;
+    }
+
+    private void shed(List<Consumer> victims) {
+        if (victims.isEmpty()) return;
+        Runnable r = () -> {
+            for (Consumer c : victims) {
+                Log.d(TAG, "Shedding " + c.name + " (" + (c.bytes / 1024) + " KB)");
+                try {
+                    c.releasable.release();
+                } catch (Exception e) {
+                    Log.e(TAG, "release failed for " + c.name, e);
+                }
+            }
+        };
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            r.run();
+        } else {
+            mainHandler.post(r);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.app.utils;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kolejka żądań do serwisu z klasami priorytetów. Żądania interaktywne
+ * wstrzymują start pobrań w tle, a już trwające pobrania w tle są przerywane.
+ * Przerwane zadanie wraca na początek swojej kolejki, jeśli nie zdążyło wystartować
+ * albo zgłosiło przez {@link #markAborted()}, że przerwało pracę przed końcem.
+ */
+public class RequestScheduler {
+
+    private static final String TAG = "RequestScheduler";
+
+    /** Zadanie wykonywane w bieżącym wątku roboczym - dla {@link #markAborted()}. */
+    private static final ThreadLocal<Ticket> CURRENT = new ThreadLocal<>();
+
+    public enum Priority {
+        /** Akcja użytkownika, np. btnConfirmArea / Find. */
+        INTERACTIVE(3, false),
+        /** Obraz, na który użytkownik właśnie czeka, np. mapa startowa. */
+        VISIBLE_PLACEHOLDER(2, false),
+        /** Pobrania spekulatywne. */
+        PREFETCH(2, true),
+        /** Zadania wsadowe (eksport, rozgrzewanie cache). */
+        BATCH(1, true);
+
+        final int maxConcurrent;
+        final boolean preemptible;
+
+        Priority(int maxConcurrent, boolean preemptible) {
+            this.maxConcurrent = maxConcurrent;
+            this.preemptible = preemptible;
+        }
+    }
+
+    /** Statystyki opóźnienia w kolejce dla jednej klasy priorytetu. */
+    public static final class QueueStats {
+        public final int started;
+        public final int queued;
+        public final int running;
+        public final int preempted;
+        public final long totalWaitMs;
+        public final long maxWaitMs;
+
+        QueueStats(int started, int queued, int running, int preempted, long totalWaitMs, long maxWaitMs) {
+            this.started = started;
+            this.queued = queued;
+            this.running = running;
+            this.preempted = preempted;
+            this.totalWaitMs = totalWaitMs;
+            this.maxWaitMs = maxWaitMs;
+        }
+
+        public long averageWaitMs() {
+            return started == 0 ? 0 : totalWaitMs / started;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "started=" + started + " queued=" + queued + " running=" + running
+                    + " preempted=" + preempted + " avgWait=" + averageWaitMs()
+                    + "ms maxWait=" + maxWaitMs + "ms";
+        }
+    }
+
+    /** Uchwyt do zgłoszonego zadania. */
+    public final class Ticket {
+        private final Priority priority;
+        private final Runnable task;
+        private final long submittedAt = SystemClock.uptimeMillis();
+        private Thread worker;
+        private boolean preempted;
+        private boolean cancelled;
+        /** Zadanie wystartowało w tej próbie. */
+        private boolean ran;
+        /** Zadanie zgłosiło, że po przerwaniu nie dokończyło pracy. */
+        private boolean aborted;
+
+        Ticket(Priority priority, Runnable task) {
+            this.priority = priority;
+            this.task = task;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /** Usuwa zadanie z kolejki lub przerywa je, jeśli już trwa. */
+        public void cancel() {
+            synchronized (RequestScheduler.this) {
+                cancelled = true;
+                if (queues.get(priority).remove(this)) return;
+                if (worker != null) worker.interrupt();
+            }
+        }
+    }
+
+    private static final class Counters {
+        int started;
+        int running;
+        int preempted;
+        long totalWaitMs;
+        long maxWaitMs;
+    }
+
+    private static RequestScheduler instance;
+
+    private final Map<Priority, ArrayDeque<Ticket>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counters> counters = new EnumMap<>(Priority.class);
+    private final List<Ticket> running = new ArrayList<>();
+    private final ExecutorService executor;
+
+    public static synchronized RequestScheduler getInstance() {
+        if (instance == null) {
+            instance = new RequestScheduler();
+        }
+        return instance;
+    }
+
+    private RequestScheduler() {
+        for (Priority p : Priority.values()) {
+            queues.put(p, new ArrayDeque<>());
+            counters.put(p, new Counters());
+        }
+        AtomicInteger seq = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "map-request-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Zgłasza zadanie. Zadania wywłaszczalne, które po przerwaniu wątku kończą
+     * przed czasem, muszą to zgłosić przez {@link #markAborted()} i dać się
+     * bezpiecznie dokończyć ponownie. Zadanie dokończone mimo przerwania
+     * (np. blokujące I/O ignoruje przerwania) nie jest powtarzane.
+     */
+    public synchronized Ticket submit(@NonNull Priority priority, @NonNull Runnable task) {
+        Ticket ticket = new Ticket(priority, task);
+        queues.get(priority).addLast(ticket);
+
+        if (priority == Priority.INTERACTIVE) {
+            preemptBackgroundLocked();
+        }
+        dispatchLocked();
+        return ticket;
+    }
+
+    /**
+     * Wołane przez zadanie w jego wątku roboczym, gdy po przerwaniu zakończyło
+     * pracę przed końcem. Wywłaszczone zadanie wróci wtedy do kolejki.
+     */
+    public static void markAborted() {
+        Ticket t = CURRENT.get();
+        if (t == null) return;
+        synchronized (getInstance()) {
+            t.aborted = true;
+        }
+    }
+
+    /** Opóźnienia w kolejce i liczniki dla każdej klasy priorytetu. */
+    public synchronized Map<Priority, QueueStats> getQueueStats() {
+        Map<Priority, QueueStats> stats = new EnumMap<>(Priority.class);
+        for (Priority p : Priority.values()) {
+            Counters c = counters.get(p);
+            stats.put(p, new QueueStats(c.started, queues.get(p).size(), c.running,
+                    c.preempted, c.totalWaitMs, c.maxWaitMs));
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private boolean interactiveActiveLocked() {
+        return !queues.get(Priority.INTERACTIVE).isEmpty()
+                || counters.get(Priority.INTERACTIVE).running > 0;
+    }
+
+    private void preemptBackgroundLocked() {
+        for (Ticket t : running) {
+            if (t.priority.preemptible && !t.preempted) {
+                Log.d(TAG, "Preempting " + t.priority + " request for interactive one");
+                t.preempted = true;
+                counters.get(t.priority).preempted++;
+                if (t.worker != null) t.worker.interrupt();
+            }
+        }
+    }
+
+    private void dispatchLocked() {
+        boolean interactiveActive = interactiveActiveLocked();
+        for (Priority p : Priority.values()) {
+            if (p.preemptible && interactiveActive) continue;
+
+            ArrayDeque<Ticket> queue = queues.get(p);
+            Counters c = counters.get(p);
+            while (!queue.isEmpty() && c.running < p.maxConcurrent) {
+                startLocked(queue.pollFirst(), c);
+            }
+        }
+    }
+
+    private void startLocked(Ticket t, Counters c) {
+        c.running++;
+        running.add(t);
+
+        executor.execute(() -> {
+            synchronized (RequestScheduler.this) {
+                if (t.preempted || t.cancelled) {
+                    onFinishedLocked(t);
+                    return;
+                }
+                t.worker = Thread.currentThread();
+                t.ran = true;
+                // Liczone dopiero przy faktycznym starcie - wywłaszczenie przed startem nie dubluje licznika.
+                long waited = SystemClock.uptimeMillis() - t.submittedAt;
+                c.started++;
+                c.totalWaitMs += waited;
+                c.maxWaitMs = Math.max(c.maxWaitMs, waited);
+            }
+            if (t.priority.preemptible) {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            }
+            CURRENT.set(t);
+            try {
+                t.task.run();
+            } catch (Exception e) {
+                Log.e(TAG, t.priority + " request failed", e);
+            } finally {
+                CURRENT.remove();
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+                synchronized (RequestScheduler.this) {
+                    t.worker = null;
+                    // Przerwanie dotyczyło tylko tego zadania, nie następnego w tym wątku.
+                    Thread.interrupted();
+                    onFinishedLocked(t);
+                }
+            }
+        });
+    }
+
+    private void onFinishedLocked(Ticket t) {
+        running.remove(t);
+        Counters c = counters.get(t.priority);
+        c.running--;
+
+        if (t.preempted && !t.cancelled && (!t.ran || t.aborted)) {
+            // Wraca na początek kolejki - wystartuje, gdy skończą się żądania interaktywne.
+            t.preempted = false;
+            t.ran = false;
+            t.aborted = false;
+            queues.get(t.priority).addFirst(t);
+        }
+        dispatchLocked();
+    }
+}
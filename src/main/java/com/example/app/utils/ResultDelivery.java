@@ -0,0 +1,266 @@
+package com.example.app.utils;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Trace;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.fragment.app.Fragment;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Dostarczanie wyników z wątków roboczych do fragmentów. Bitmapy są przygotowywane
+ * do rysowania ({@link Bitmap#prepareToDraw()}) jeszcze w wątku roboczym, a wszystkie
+ * aktualizacje zebrane do następnej klatki są wykonywane razem w jednym callbacku
+ * {@link Choreographer}. Wyniki dla fragmentów odłączonych od aktywności są odrzucane.
+ * Po pokazaniu obrazu kilka kolejnych klatek okna jest mierzonych przez FrameMetrics;
+ * listener jest potem zdejmowany, a wątek pomiaru kończony, gdy nie obserwuje żadnego okna.
+ */
+public final class ResultDelivery {
+
+    private static final String TAG = "ResultDelivery";
+    /** Ile klatek po pokazaniu obrazu liczy się do statystyk zacięć. */
+    private static final int WATCH_FRAMES = 5;
+
+    /** Zacięcia w klatkach po pokazaniu obrazów. */
+    public static final class JankStats {
+        public final int delivered;
+        public final int coalesced;
+        public final int dropped;
+        public final int framesObserved;
+        public final int jankyFrames;
+        public final float worstFrameMs;
+
+        JankStats(int delivered, int coalesced, int dropped, int framesObserved, int jankyFrames,
+                  float worstFrameMs) {
+            this.delivered = delivered;
+            this.coalesced = coalesced;
+            this.dropped = dropped;
+            this.framesObserved = framesObserved;
+            this.jankyFrames = jankyFrames;
+            this.worstFrameMs = worstFrameMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "delivered=%d coalesced=%d dropped=%d frames=%d janky=%d worst=%.1fms",
+                    delivered, coalesced, dropped, framesObserved, jankyFrames, worstFrameMs);
+        }
+    }
+
+    private static final class Pending {
+        final Fragment target;
+        @Nullable
+        final String slot;
+        final boolean image;
+        final Runnable update;
+
+        Pending(Fragment target, @Nullable String slot, boolean image, Runnable update) {
+            this.target = target;
+            this.slot = slot;
+            this.image = image;
+            this.update = update;
+        }
+    }
+
+    private static ResultDelivery instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer.FrameCallback frameCallback = this::doFrame;
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
+
+    private final List<Pending> pending = new ArrayList<>();
+    private boolean frameScheduled;
+
+    /** Pomiar klatek jednego okna; nie trzyma okna, więc nie blokuje jego zwolnienia w mapie. */
+    private final class FrameWatch implements Window.OnFrameMetricsAvailableListener {
+        final float frameBudgetMs;
+        int framesLeft = WATCH_FRAMES;
+
+        FrameWatch(float frameBudgetMs) {
+            this.frameBudgetMs = frameBudgetMs;
+        }
+
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics metrics, int dropCount) {
+            onFrame(window, this, metrics);
+        }
+    }
+
+    // Pomiar klatek - listenery działają na osobnym wątku, tworzonym tylko na czas pomiaru.
+    private final Map<Window, FrameWatch> watches = new WeakHashMap<>();
+    @Nullable
+    private HandlerThread metricsThread;
+    @Nullable
+    private Handler metricsHandler;
+
+    private int delivered, coalesced, dropped, framesObserved, jankyFrames;
+    private float worstFrameMs;
+
+    public static synchronized ResultDelivery getInstance() {
+        if (instance == null) {
+            instance = new ResultDelivery();
+        }
+        return instance;
+    }
+
+    private ResultDelivery() {
+    }
+
+    /** Wykonuje {@code update} w wątku UI w najbliższej klatce, jeśli fragment jest nadal dołączony. */
+    public void deliver(@NonNull Fragment target, @NonNull Runnable update) {
+        enqueue(new Pending(target, null, false, update));
+    }
+
+    /**
+     * Jak {@link #deliver}, ale dla aktualizacji pokazującej bitmapę. Wołać w wątku roboczym:
+     * tu jest wywoływane {@link Bitmap#prepareToDraw()}. Nowszy wynik dla tego samego
+     * fragmentu i {@code slot} zastępuje jeszcze niedostarczony starszy i trafia na koniec
+     * kolejki, więc aktualizacje są wykonywane w kolejności dostarczenia.
+     */
+    public void deliverImage(@NonNull Fragment target, @NonNull String slot, @Nullable Bitmap bitmap,
+                             @NonNull Runnable update) {
+        if (bitmap != null && !bitmap.isRecycled()) {
+            bitmap.prepareToDraw();
+        }
+        enqueue(new Pending(target, slot, bitmap != null, update));
+    }
+
+    public synchronized JankStats getStats() {
+        return new JankStats(delivered, coalesced, dropped, framesObserved, jankyFrames, worstFrameMs);
+    }
+
+    private void enqueue(Pending p) {
+        boolean schedule;
+        synchronized (this) {
+            if (p.slot != null) {
+                Iterator<Pending> it = pending.iterator();
+                while (it.hasNext()) {
+                    Pending q = it.next();
+                    if (q.target == p.target && p.slot.equals(q.slot)) {
+                        it.remove();
+                        coalesced++;
+                        break;
+                    }
+                }
+            }
+            pending.add(p);
+            schedule = !frameScheduled;
+            frameScheduled = true;
+        }
+
+        if (!schedule) return;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            scheduleFrame.run();
+        } else {
+            mainHandler.post(scheduleFrame);
+        }
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            frameScheduled = false;
+        }
+
+        Trace.beginSection("ResultDelivery.frame");
+        try {
+            for (Pending p : batch) {
+                Fragment f = p.target;
+                if (!f.isAdded() || f.getView() == null) {
+                    synchronized (this) {
+                        dropped++;
+                    }
+                    Log.d(TAG, "Dropping result for detached " + f.getClass().getSimpleName());
+                    continue;
+                }
+                // Wyjątek jednej aktualizacji nie może zgubić reszty zdjętej już z kolejki.
+                try {
+                    p.update.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Update for " + f.getClass().getSimpleName() + " failed", e);
+                    synchronized (this) {
+                        dropped++;
+                    }
+                    continue;
+                }
+                synchronized (this) {
+                    delivered++;
+                }
+                if (p.image) watchFrames(f.requireActivity());
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /** W wątku UI: liczy od nowa klatki okna albo zaczyna jego pomiar. */
+    private void watchFrames(Activity activity) {
+        Window window = activity.getWindow();
+        FrameWatch watch;
+        Handler handler;
+        synchronized (this) {
+            watch = watches.get(window);
+            if (watch != null) {
+                watch.framesLeft = WATCH_FRAMES;
+                return;
+            }
+            float refresh = ContextCompat.getDisplayOrDefault(activity).getRefreshRate();
+            watch = new FrameWatch(refresh > 0 ? 1000f / refresh : 1000f / 60);
+            watches.put(window, watch);
+            if (metricsThread == null) {
+                metricsThread = new HandlerThread("frame-metrics");
+                metricsThread.start();
+                metricsHandler = new Handler(metricsThread.getLooper());
+            }
+            handler = metricsHandler;
+        }
+        window.addOnFrameMetricsAvailableListener(watch, handler);
+    }
+
+    /** W wątku pomiaru. Po ostatniej mierzonej klatce listener jest zdejmowany w wątku UI. */
+    private void onFrame(Window window, FrameWatch watch, FrameMetrics metrics) {
+        synchronized (this) {
+            if (watch.framesLeft <= 0) return;
+            watch.framesLeft--;
+
+            float ms = metrics.getMetric(FrameMetrics.TOTAL_DURATION) / 1_000_000f;
+            framesObserved++;
+            if (ms > watch.frameBudgetMs) jankyFrames++;
+            if (ms > worstFrameMs) worstFrameMs = ms;
+            if (watch.framesLeft > 0) return;
+
+            watches.remove(window);
+            Log.d(TAG, "Frame stats: " + getStats());
+        }
+        mainHandler.post(() -> {
+            window.removeOnFrameMetricsAvailableListener(watch);
+            stopMetricsThreadIfIdle();
+        });
+    }
+
+    private synchronized void stopMetricsThreadIfIdle() {
+        if (!watches.isEmpty() || metricsThread == null) return;
+        metricsThread.quitSafely();
+        metricsThread = null;
+        metricsHandler = null;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.app.utils;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.core.Coordinates;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zapamiętuje ostatnie zaznaczenia prostokątów i z wyprzedzeniem pobiera do
+ * {@link FragmentCache} kafle ({@link TileComposer}) tych, które użytkownik
+ * prawdopodobnie wybierze za chwilę:
+ * sąsiada tej samej wielkości w kierunku ruchu oraz często powtarzane obszary.
+ * Pobrania idą w klasie {@link RequestScheduler.Priority#PREFETCH}, więc
+ * startują tylko wtedy, gdy nie ma żądań interaktywnych.
+ */
+public class SelectionPrefetcher {
+
+    private static final String TAG = "SelectionPrefetcher";
+
+    /** Przestrzeń pikseli mapy po stronie serwisu. */
+    public static final int MAP_SIZE = Coordinates.MAP_SIZE;
+    private static final int HISTORY_SIZE = 16;
+
+    private static SelectionPrefetcher instance;
+
+    private final ArrayDeque<Rect> history = new ArrayDeque<>();
+    private final List<RequestScheduler.Ticket> pending = new ArrayList<>();
+    private int maxPredictions = 2;
+    private boolean enabled = true;
+
+    public static synchronized SelectionPrefetcher getInstance() {
+        if (instance == null) {
+            instance = new SelectionPrefetcher();
+        }
+        return instance;
+    }
+
+    /** Ile prostokątów pobierać z wyprzedzeniem po każdym zaznaczeniu (0 wyłącza prefetch). */
+    public synchronized void setMaxPredictions(int maxPredictions) {
+        this.maxPredictions = Math.max(0, maxPredictions);
+        this.enabled = maxPredictions > 0;
+    }
+
+    public FragmentCache.PrefetchStats getStats() {
+        return FragmentCache.getInstance().getPrefetchStats();
+    }
+
+    /** Zapisuje zaznaczenie użytkownika i planuje pobranie przewidywanych sąsiadów. */
+    public synchronized void recordSelection(int x1, int y1, int x2, int y2) {
+        Rect r = new Rect(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+        if (r.isEmpty()) return;
+
+        history.addLast(r);
+        while (history.size() > HISTORY_SIZE) history.removeFirst();
+
+        // Stare przewidywania są już nieaktualne.
+        for (RequestScheduler.Ticket t : pending) t.cancel();
+        pending.clear();
+
+        if (!enabled) return;
+        for (Rect p : predict()) {
+            pending.add(schedule(p));
+        }
+    }
+
+    private RequestScheduler.Ticket schedule(Rect p) {
+        return RequestScheduler.getInstance().submit(RequestScheduler.Priority.PREFETCH, () -> {
+            try {
+                int bytes = TileComposer.getInstance().prefetch(p.left, p.top, p.right, p.bottom);
+                if (bytes > 0) Log.d(TAG, "Prefetched tiles of " + p.toShortString() + " (" + bytes + " B)");
+            } catch (InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                Log.w(TAG, "Prefetch of " + p.toShortString() + " failed: " + e.getMessage());
+            }
+            // Prefetch kończy się między kaflami po wywłaszczeniu - reszta kafli przy następnej próbie.
+            if (Thread.currentThread().isInterrupted()) RequestScheduler.markAborted();
+        });
+    }
+
+    @NonNull
+    private List<Rect> predict() {
+        List<Rect> out = new ArrayList<>();
+        Rect last = history.peekLast();
+        if (last == null || maxPredictions == 0) return out;
+
+        Rect neighbour = neighbourInDirectionOfTravel(last);
+        if (neighbour != null) out.add(neighbour);
+
+        for (Rect r : mostRevisited()) {
+            if (out.size() >= maxPredictions) break;
+            if (!r.equals(last) && !out.contains(r)) out.add(r);
+        }
+
+        while (out.size() > maxPredictions) out.remove(out.size() - 1);
+        return out;
+    }
+
+    /** Prostokąt tej samej wielkości co ostatni, przesunięty w dominującym kierunku ruchu. */
+    private Rect neighbourInDirectionOfTravel(Rect last) {
+        if (history.size() < 2) return null;
+
+        Rect[] arr = history.toArray(new Rect[0]);
+        Rect prev = arr[arr.length - 2];
+        int dx = last.centerX() - prev.centerX();
+        int dy = last.centerY() - prev.centerY();
+        if (dx == 0 && dy == 0) return null;
+
+        Rect next = new Rect(last);
+        if (Math.abs(dx) >= Math.abs(dy)) {
+            next.offset(Integer.signum(dx) * last.width(), 0);
+        } else {
+            next.offset(0, Integer.signum(dy) * last.height());
+        }
+
+        // Dosunięcie do krawędzi mapy z zachowaniem rozmiaru.
+        if (next.left < 0) next.offset(-next.left, 0);
+        if (next.top < 0) next.offset(0, -next.top);
+        if (next.right > MAP_SIZE) next.offset(MAP_SIZE - next.right, 0);
+        if (next.bottom > MAP_SIZE) next.offset(0, MAP_SIZE - next.bottom);
+
+        return next.equals(last) ? null : next;
+    }
+
+    /** Prostokąty z historii wybrane więcej niż raz, od najczęstszych. */
+    private List<Rect> mostRevisited() {
+        Map<Rect, Integer> counts = new HashMap<>();
+        for (Rect r : history) {
+            Integer c = counts.get(r);
+            counts.put(r, c == null ? 1 : c + 1);
+        }
+
+        List<Rect> revisited = new ArrayList<>();
+        for (Map.Entry<Rect, Integer> e : counts.entrySet()) {
+            if (e.getValue() > 1) revisited.add(e.getKey());
+        }
+        revisited.sort((a, b) -> Integer.compare(counts.get(b), counts.get(a)));
+        return revisited;
+    }
+}
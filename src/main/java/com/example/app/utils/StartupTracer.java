@@ -0,0 +1,49 @@
+package com.example.app.utils;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Sekcje śledzenia zimnego startu. Każda sekcja trafia do systrace/Perfetto
+ * ({@link Trace}) oraz do logcata z czasem trwania, a czas do pierwszej klatki
+ * jest porównywany z docelowym {@link #FIRST_FRAME_TARGET_MS}.
+ */
+public final class StartupTracer {
+
+    private static final String TAG = "StartupTracer";
+
+    /** Docelowy czas od startu procesu do pierwszej narysowanej klatki. */
+    public static final long FIRST_FRAME_TARGET_MS = 800;
+
+    private static boolean firstFrameReported = false;
+
+    private StartupTracer() {
+    }
+
+    /** Otwiera sekcję; zwracany czas startu należy przekazać do {@link #end}. */
+    public static long begin(String section) {
+        Trace.beginSection(section);
+        return SystemClock.uptimeMillis();
+    }
+
+    public static void end(String section, long startedAt) {
+        Trace.endSection();
+        Log.d(TAG, section + " took " + (SystemClock.uptimeMillis() - startedAt) + " ms");
+    }
+
+    /** Zgłasza pierwszą narysowaną klatkę; kolejne wywołania są ignorowane. */
+    public static synchronized void reportFirstFrame() {
+        if (firstFrameReported) return;
+        firstFrameReported = true;
+
+        long ttff = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        if (ttff > FIRST_FRAME_TARGET_MS) {
+            Log.w(TAG, "Time to first frame " + ttff + " ms exceeds target "
+                    + FIRST_FRAME_TARGET_MS + " ms");
+        } else {
+            Log.i(TAG, "Time to first frame " + ttff + " ms");
+        }
+    }
+}
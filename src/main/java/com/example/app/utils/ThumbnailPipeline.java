@@ -0,0 +1,224 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.core.CacheKeys;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Miniatury wyników do listy historii. Generowane na osobnym wątku (skalowanie
+ * pokazanej bitmapy albo dekodowanie z {@link FragmentCache} z inSampleSize),
+ * trzymane w osobnym LRU w pamięci i jako JPEG w katalogu cache.
+ */
+public class ThumbnailPipeline {
+
+    private static final String TAG = "ThumbnailPipeline";
+    private static final String BUDGET_NAME = "thumbnails";
+    private static final String DIR_NAME = "thumbs";
+
+    /** Dłuższy bok miniatury w pikselach. */
+    public static final int THUMB_SIZE = 192;
+    private static final int MEMORY_CAP_BYTES = 2 * 1024 * 1024;
+
+    private static ThumbnailPipeline instance;
+
+    private final LruCache<String, Bitmap> memory = new LruCache<String, Bitmap>(MEMORY_CAP_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getAllocationByteCount();
+        }
+    };
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "thumbnails");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Nullable
+    private Context appContext;
+    @Nullable
+    private File dir;
+
+    public static synchronized ThumbnailPipeline getInstance() {
+        if (instance == null) {
+            instance = new ThumbnailPipeline();
+        }
+        return instance;
+    }
+
+    private ThumbnailPipeline() {
+        MemoryBudget.getInstance().register(BUDGET_NAME, MemoryBudget.PRIORITY_CACHE, () -> {
+            memory.evictAll();
+            MemoryBudget.getInstance().release(BUDGET_NAME);
+        });
+    }
+
+    /**
+     * Zapamiętuje kontekst aplikacji. Katalog na dysku jest tworzony dopiero przy
+     * pierwszym użyciu, zwykle w wątku roboczym; bez attach() miniatury są tylko w pamięci.
+     */
+    public synchronized void attach(@NonNull Context context) {
+        if (appContext == null) appContext = context.getApplicationContext();
+    }
+
+    /** Katalog miniatur albo null bez attach() lub gdy nie da się go utworzyć. */
+    @Nullable
+    private synchronized File dir() {
+        if (dir == null && appContext != null) {
+            File d = new File(appContext.getCacheDir(), DIR_NAME);
+            if (!d.isDirectory() && !d.mkdirs()) {
+                Log.w(TAG, "Cannot create thumbnail dir " + d);
+                return null;
+            }
+            dir = d;
+        }
+        return dir;
+    }
+
+    /** Tworzy miniaturę z właśnie pokazanej bitmapy, żeby nie dekodować jej ponownie. */
+    public void submit(@NonNull String key, @NonNull Bitmap full) {
+        if (memory.get(key) != null) return;
+        worker.execute(() -> {
+            if (full.isRecycled()) return;
+            store(key, scale(full));
+        });
+    }
+
+    /**
+     * Usuwa miniaturę wyniku, którego plik {@link FragmentCache} o nazwie {@code fileHash}
+     * ({@link CacheKeys#hash} klucza) został usunięty.
+     */
+    public void remove(@NonNull String fileHash) {
+        for (String key : memory.snapshot().keySet()) {
+            if (fileHash.equals(CacheKeys.hash(key))) memory.remove(key);
+        }
+        MemoryBudget.getInstance().update(BUDGET_NAME, memory.size());
+        worker.execute(() -> {
+            File d = dir();
+            if (d != null) new File(d, fileHash + ".jpg").delete();
+        });
+    }
+
+    /** Usuwa wszystkie miniatury z pamięci i z dysku. */
+    public void clear() {
+        memory.evictAll();
+        MemoryBudget.getInstance().release(BUDGET_NAME);
+        // W wątku miniatur - zapis, który jeszcze czeka w kolejce, nie odtworzy usuniętego pliku.
+        worker.execute(() -> {
+            memory.evictAll();
+            File d = dir();
+            File[] files = d == null ? null : d.listFiles((x, name) -> name.endsWith(".jpg"));
+            if (files == null) return;
+            for (File f : files) {
+                f.delete();
+            }
+        });
+    }
+
+    /**
+     * Ustawia miniaturę w widoku. Widok może być ponownie użyty dla innego klucza,
+     * więc wynik jest ustawiany tylko wtedy, gdy tag widoku nadal wskazuje ten klucz.
+     */
+    public void bind(@NonNull String key, @NonNull ImageView target) {
+        target.setTag(key);
+        Bitmap cached = memory.get(key);
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            return;
+        }
+
+        target.setImageDrawable(null);
+        worker.execute(() -> {
+            Bitmap thumb = loadFromDisk(key);
+            if (thumb == null) {
+                thumb = decodeFromCache(key);
+                if (thumb != null) store(key, thumb);
+            } else {
+                putMemory(key, thumb);
+            }
+
+            Bitmap result = thumb;
+            mainHandler.post(() -> {
+                if (result != null && key.equals(target.getTag())) {
+                    target.setImageBitmap(result);
+                }
+            });
+        });
+    }
+
+    private Bitmap scale(Bitmap full) {
+        float f = (float) THUMB_SIZE / Math.max(full.getWidth(), full.getHeight());
+        if (f >= 1f) return full.copy(Bitmap.Config.RGB_565, false);
+        return Bitmap.createScaledBitmap(full, Math.max(1, Math.round(full.getWidth() * f)),
+                Math.max(1, Math.round(full.getHeight() * f)), true);
+    }
+
+    @Nullable
+    private Bitmap decodeFromCache(String key) {
+        byte[] bytes = FragmentCache.getInstance().get(key);
+        if (bytes == null) return null;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts);
+
+        int sample = 1;
+        while (Math.max(opts.outWidth, opts.outHeight) / (sample * 2) >= THUMB_SIZE) {
+            sample *= 2;
+        }
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = sample;
+        opts.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap decoded = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts);
+        return decoded == null ? null : scale(decoded);
+    }
+
+    private void store(String key, Bitmap thumb) {
+        putMemory(key, thumb);
+        File f = fileFor(key);
+        if (f == null) return;
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            thumb.compress(Bitmap.CompressFormat.JPEG, 80, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write thumbnail " + f, e);
+        }
+    }
+
+    @Nullable
+    private Bitmap loadFromDisk(String key) {
+        File f = fileFor(key);
+        if (f == null || !f.isFile()) return null;
+        return BitmapFactory.decodeFile(f.getPath());
+    }
+
+    private void putMemory(String key, Bitmap thumb) {
+        memory.put(key, thumb);
+        MemoryBudget.getInstance().update(BUDGET_NAME, memory.size());
+    }
+
+    @Nullable
+    private File fileFor(String key) {
+        File d = dir();
+        return d == null ? null : new File(d, CacheKeys.hash(key) + ".jpg");
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.app.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.core.CacheKeys;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Składa dowolny prostokąt mapy z kafli o stałej siatce nad przestrzenią
+ * 0–{@value SelectionPrefetcher#MAP_SIZE} px. Z serwisu pobierane są tylko
+ * brakujące kafle, a wynik jest sklejany i przycinany lokalnie,
+ * więc nakładające się zaznaczenia współdzielą większość bajtów w {@link FragmentCache}.
+ * Duże zaznaczenia (od {@link #setParallelThreshold progu} kafli) są pobierane
+ * i dekodowane równolegle w puli wątków, małe - kolejno w wątku wywołującym.
+ */
+public class TileComposer {
+
+    private static final String TAG = "TileComposer";
+
+    /** Bok kafla w pikselach mapy - siatka 8x8 nad mapą 1000x1000. */
+    public static final int TILE_SIZE = 125;
+    /** Minimum wątków puli - pobieranie kafli czeka głównie na sieć, nie na CPU. */
+    private static final int MIN_TILE_THREADS = 4;
+
+    private static TileComposer instance;
+
+    private final ExecutorService tilePool;
+    private volatile int parallelThreshold = 4;
+
+    public static synchronized TileComposer getInstance() {
+        if (instance == null) {
+            instance = new TileComposer();
+        }
+        return instance;
+    }
+
+    private TileComposer() {
+        AtomicInteger seq = new AtomicInteger();
+        int threads = Math.max(MIN_TILE_THREADS, Runtime.getRuntime().availableProcessors());
+        tilePool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "map-tile-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Od ilu kafli zaznaczenie jest pobierane i dekodowane równolegle. Mniejsze idą
+     * kolejno w wątku wywołującym, bo przy 1-3 kaflach przekazanie do puli kosztuje
+     * więcej, niż daje.
+     */
+    public void setParallelThreshold(int tiles) {
+        this.parallelThreshold = Math.max(1, tiles);
+    }
+
+    public static String tileKey(int tx, int ty) {
+        return "tile:" + TILE_SIZE + ":" + tx + "," + ty;
+    }
+
+    /** Prostokąt kafla w pikselach mapy (ostatni rząd/kolumna przycięte do krawędzi). */
+    public static Rect tileBounds(int tx, int ty) {
+        int max = SelectionPrefetcher.MAP_SIZE;
+        return new Rect(tx * TILE_SIZE, ty * TILE_SIZE,
+                Math.min((tx + 1) * TILE_SIZE, max), Math.min((ty + 1) * TILE_SIZE, max));
+    }
+
+    /**
+     * Obraz zaznaczenia: z cache pod dokładnym kluczem, a jeśli go nie ma - złożony
+     * z kafli. Złożony obraz nie trafia do cache pod dokładnym kluczem - tam leżą
+     * tylko bajty z serwisu ({@link #fetchExact}). Wywoływać w wątku roboczym.
+     */
+    @NonNull
+    public Bitmap load(int x1, int y1, int x2, int y2) throws IOException {
+        String key = CacheKeys.pixelKey(x1, y1, x2, y2);
+        byte[] exact = FragmentCache.getInstance().get(key);
+        if (exact != null) {
+            Bitmap bmp = BitmapFactory.decodeByteArray(exact, 0, exact.length);
+            if (bmp != null) return bmp;
+            Log.w(TAG, "Cached " + key + " does not decode, composing from tiles");
+        }
+        return compose(x1, y1, x2, y2);
+    }
+
+    /**
+     * Jak {@link #load}, ale bez sieci: obraz spod dokładnego klucza albo złożony
+     * z kafli, które wszystkie są jeszcze w cache. Dla przywracania z historii.
+     *
+     * @throws IOException "no longer cached", gdy cache nie ma już potrzebnych bajtów
+     */
+    @NonNull
+    public Bitmap loadCached(int x1, int y1, int x2, int y2) throws IOException {
+        byte[] exact = FragmentCache.getInstance().get(CacheKeys.pixelKey(x1, y1, x2, y2));
+        if (exact != null) {
+            Bitmap bmp = BitmapFactory.decodeByteArray(exact, 0, exact.length);
+            if (bmp != null) return bmp;
+        }
+        return compose(x1, y1, x2, y2, true);
+    }
+
+    /**
+     * Bajty zaznaczenia w dokładnym prostokącie, tak jak je wysłał serwis - z cache
+     * albo pobrane i zapisane pod kluczem zaznaczenia. Dla eksportu, który kopiuje
+     * bajty bez dekodowania. Wywoływać w wątku roboczym.
+     */
+    @NonNull
+    public byte[] fetchExact(int x1, int y1, int x2, int y2) throws IOException {
+        return FragmentCache.getInstance().getOrFetch(CacheKeys.pixelKey(x1, y1, x2, y2),
+                () -> CityMapService.getInstance().getFragmentOfMap(x1, y1, x2, y2));
+    }
+
+    /**
+     * Pobiera do cache brakujące kafle pokrywające prostokąt. Przerywane między kaflami,
+     * gdy wątek zostanie wywłaszczony.
+     *
+     * @return liczba pobranych bajtów
+     */
+    public int prefetch(int x1, int y1, int x2, int y2) throws IOException {
+        int fetched = 0;
+        int max = SelectionPrefetcher.MAP_SIZE;
+        int l = Math.max(0, Math.min(x1, x2)), t = Math.max(0, Math.min(y1, y2));
+        int r = Math.min(max, Math.max(x1, x2)), b = Math.min(max, Math.max(y1, y2));
+        if (r <= l || b <= t) return 0;
+
+        for (int ty = t / TILE_SIZE; ty <= (b - 1) / TILE_SIZE; ty++) {
+            for (int tx = l / TILE_SIZE; tx <= (r - 1) / TILE_SIZE; tx++) {
+                if (Thread.currentThread().isInterrupted()) return fetched;
+                Rect tb = tileBounds(tx, ty);
+                fetched += FragmentCache.getInstance().prefetch(tileKey(tx, ty), () -> CityMapService
+                        .getInstance().getFragmentOfMap(tb.left, tb.top, tb.right, tb.bottom));
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * Zwraca obraz prostokąta {@code x1,y1 → x2,y2} złożony z kafli. Wywoływać w wątku roboczym.
+     *
+     * @throws IOException gdy któregoś kafla nie da się pobrać lub zdekodować
+     */
+    @NonNull
+    public Bitmap compose(int x1, int y1, int x2, int y2) throws IOException {
+        return compose(x1, y1, x2, y2, false);
+    }
+
+    private Bitmap compose(int x1, int y1, int x2, int y2, boolean cachedOnly) throws IOException {
+        Rect target = new Rect(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+        if (!target.intersect(0, 0, SelectionPrefetcher.MAP_SIZE, SelectionPrefetcher.MAP_SIZE)
+                || target.isEmpty()) {
+            throw new IOException("Empty selection");
+        }
+
+        int tx0 = target.left / TILE_SIZE;
+        int ty0 = target.top / TILE_SIZE;
+        int tx1 = (target.right - 1) / TILE_SIZE;
+        int ty1 = (target.bottom - 1) / TILE_SIZE;
+
+        List<int[]> tiles = new ArrayList<>();
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                tiles.add(new int[]{tx, ty});
+            }
+        }
+
+        boolean parallel = tiles.size() >= parallelThreshold;
+        List<Future<Bitmap>> futures = parallel ? submitTiles(tiles, cachedOnly) : null;
+
+        Bitmap out = null;
+        Canvas canvas = null;
+        float scale = 1f;
+        Rect src = new Rect();
+        Rect dst = new Rect();
+        boolean complete = false;
+
+        try {
+            for (int i = 0; i < tiles.size(); i++) {
+                int[] t = tiles.get(i);
+                Bitmap tile = parallel ? await(futures.get(i)) : loadTile(t[0], t[1], cachedOnly);
+                Rect bounds = tileBounds(t[0], t[1]);
+
+                if (out == null) {
+                    // Serwis może zwracać obraz w innej skali niż piksele mapy - bierzemy ją z pierwszego kafla.
+                    scale = (float) tile.getWidth() / bounds.width();
+                    out = Bitmap.createBitmap(Math.max(1, Math.round(target.width() * scale)),
+                            Math.max(1, Math.round(target.height() * scale)), Bitmap.Config.ARGB_8888);
+                    canvas = new Canvas(out);
+                }
+
+                // Canvas nie jest wielowątkowy, więc rysowanie zostaje tutaj, w kolejności kafli.
+                Rect part = new Rect(bounds);
+                part.intersect(target);
+                src.set(Math.round((part.left - bounds.left) * scale), Math.round((part.top - bounds.top) * scale),
+                        Math.round((part.right - bounds.left) * scale), Math.round((part.bottom - bounds.top) * scale));
+                dst.set(Math.round((part.left - target.left) * scale), Math.round((part.top - target.top) * scale),
+                        Math.round((part.right - target.left) * scale), Math.round((part.bottom - target.top) * scale));
+                canvas.drawBitmap(tile, src, dst, null);
+                tile.recycle();
+            }
+            complete = true;
+        } finally {
+            // Także przy RuntimeException - pozostałe kafle nie mogą dalej zajmować puli.
+            if (!complete) {
+                if (futures != null) cancelAll(futures);
+                if (out != null) out.recycle();
+            }
+        }
+
+        Log.d(TAG, "Composed " + target.toShortString() + " from " + tiles.size() + " tiles"
+                + (parallel ? " in parallel" : ""));
+        return out;
+    }
+
+    /**
+     * Pobiera kafel (z cache albo, bez {@code cachedOnly}, z serwisu) i dekoduje go
+     * w bieżącym wątku.
+     */
+    private static Bitmap loadTile(int tx, int ty, boolean cachedOnly) throws IOException {
+        String key = tileKey(tx, ty);
+        Rect b = tileBounds(tx, ty);
+        byte[] bytes;
+        if (cachedOnly) {
+            bytes = FragmentCache.getInstance().get(key);
+            if (bytes == null) throw new IOException("no longer cached");
+        } else {
+            bytes = FragmentCache.getInstance().getOrFetch(key, () -> CityMapService.getInstance()
+                    .getFragmentOfMap(b.left, b.top, b.right, b.bottom));
+        }
+        Bitmap tile = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        if (tile == null) {
+            throw new IOException("Cannot decode tile " + key);
+        }
+        return tile;
+    }
+
+    private List<Future<Bitmap>> submitTiles(List<int[]> tiles, boolean cachedOnly) {
+        FragmentCache cache = FragmentCache.getInstance();
+        List<Future<Bitmap>> futures = new ArrayList<>(tiles.size());
+        int missing = 0;
+
+        for (int[] t : tiles) {
+            if (!cache.contains(tileKey(t[0], t[1]))) missing++;
+            futures.add(tilePool.submit(() -> loadTile(t[0], t[1], cachedOnly)));
+        }
+        Log.d(TAG, "Tiles: " + tiles.size() + " needed, " + missing + " missing");
+        return futures;
+    }
+
+    private static Bitmap await(Future<Bitmap> f) throws IOException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Tile fetch failed: " + cause, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    /** Przerywa pozostałe kafle; już zdekodowane zwalnia od razu. */
+    private static void cancelAll(List<Future<Bitmap>> futures) {
+        for (Future<Bitmap> f : futures) {
+            if (!f.cancel(true) && f.isDone()) {
+                try {
+                    f.get().recycle();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+}